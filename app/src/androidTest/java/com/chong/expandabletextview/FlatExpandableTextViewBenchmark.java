@@ -0,0 +1,125 @@
+package com.chong.expandabletextview;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.annotation.UiThreadTest;
+import android.support.test.rule.UiThreadTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+import android.util.SparseBooleanArray;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.widget.FrameLayout;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * 对比{@link ExpandableTextView}和{@link FlatExpandableTextView}在列表中创建、绑定、测量、布局和绘制的耗时
+ */
+@RunWith(AndroidJUnit4.class)
+public class FlatExpandableTextViewBenchmark {
+
+    private static final String TAG = FlatExpandableTextViewBenchmark.class.getSimpleName();
+    /**
+     * 一屏显示的行数
+     */
+    private static final int ROWS = 20;
+    /**
+     * 预热次数
+     */
+    private static final int WARMUP = 5;
+    /**
+     * 统计次数
+     */
+    private static final int ITERATIONS = 20;
+    private static final int WIDTH = 1080;
+
+    @Rule
+    public UiThreadTestRule mUiThreadTestRule = new UiThreadTestRule();
+
+    private Context mContext;
+    private String[] mSampleStrings;
+    private Canvas mCanvas;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mSampleStrings = mContext.getResources().getStringArray(R.array.sampleStrings);
+        mCanvas = new Canvas(Bitmap.createBitmap(WIDTH, 4096, Bitmap.Config.ARGB_8888));
+    }
+
+    @Test
+    @UiThreadTest
+    public void expandableTextView() {
+        report("ExpandableTextView", run(new RowFactory() {
+
+            @Override
+            public View create(FrameLayout parent) {
+                return LayoutInflater.from(mContext).inflate(R.layout.list_item, parent, false);
+            }
+
+            @Override
+            public void bind(View row, String text, SparseBooleanArray status, int position) {
+                ((ExpandableTextView) row.findViewById(R.id.expand_text_view)).setText(text, status, position);
+            }
+        }));
+    }
+
+    @Test
+    @UiThreadTest
+    public void flatExpandableTextView() {
+        report("FlatExpandableTextView", run(new RowFactory() {
+
+            @Override
+            public View create(FrameLayout parent) {
+                return new FlatExpandableTextView(mContext);
+            }
+
+            @Override
+            public void bind(View row, String text, SparseBooleanArray status, int position) {
+                ((FlatExpandableTextView) row).setText(text, status, position);
+            }
+        }));
+    }
+
+    /**
+     * 每次创建一屏的行并完成绑定、测量、布局和绘制，返回每行的平均耗时，单位微秒
+     */
+    private long run(RowFactory factory) {
+        FrameLayout parent = new FrameLayout(mContext);
+        int widthSpec = View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY);
+        int heightSpec = View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED);
+        long total = 0;
+        for (int i = 0; i < WARMUP + ITERATIONS; i++) {
+            TextLayoutCache.getInstance().clear();
+            SparseBooleanArray status = new SparseBooleanArray();
+            long start = System.nanoTime();
+            for (int position = 0; position < ROWS; position++) {
+                View row = factory.create(parent);
+                factory.bind(row, mSampleStrings[position % mSampleStrings.length], status, position);
+                row.measure(widthSpec, heightSpec);
+                row.layout(0, 0, row.getMeasuredWidth(), row.getMeasuredHeight());
+                row.draw(mCanvas);
+            }
+            if (i >= WARMUP) {
+                total += System.nanoTime() - start;
+            }
+        }
+        return total / ITERATIONS / ROWS / 1000;
+    }
+
+    private void report(String name, long microsPerRow) {
+        Log.i(TAG, name + ": " + microsPerRow + "us per row");
+    }
+
+    private interface RowFactory {
+        View create(FrameLayout parent);
+
+        void bind(View row, String text, SparseBooleanArray status, int position);
+    }
+}
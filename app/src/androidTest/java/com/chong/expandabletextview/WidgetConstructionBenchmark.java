@@ -0,0 +1,197 @@
+package com.chong.expandabletextview;
+
+import android.app.Instrumentation;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.annotation.UiThreadTest;
+import android.support.test.rule.UiThreadTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.DisplayMetrics;
+import android.util.Log;
+import android.util.SparseBooleanArray;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+import android.widget.LinearLayout;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * 对比第一次创建控件（需要解析样式和加载图片）和之后创建相同样式的控件的耗时
+ */
+@RunWith(AndroidJUnit4.class)
+public class WidgetConstructionBenchmark {
+
+    private static final String TAG = WidgetConstructionBenchmark.class.getSimpleName();
+    /**
+     * 统计第一次创建的次数，每次之前清除共享的样式
+     */
+    private static final int FIRST_ITERATIONS = 20;
+    /**
+     * 统计之后创建的次数
+     */
+    private static final int ITERATIONS = 200;
+    /**
+     * 首屏显示的行数
+     */
+    private static final int FIRST_SCREEN_ROWS = 20;
+
+    @Rule
+    public UiThreadTestRule mUiThreadTestRule = new UiThreadTestRule();
+
+    private Context mContext;
+    private FrameLayout mParent;
+    /**
+     * 绘制首屏的画布，大小与屏幕相同
+     */
+    private Canvas mCanvas;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mParent = new FrameLayout(mContext);
+        DisplayMetrics metrics = mContext.getResources().getDisplayMetrics();
+        mCanvas = new Canvas(Bitmap.createBitmap(metrics.widthPixels, metrics.heightPixels,
+                Bitmap.Config.ARGB_8888));
+    }
+
+    @Test
+    @UiThreadTest
+    public void expandableTextView() {
+        report("ExpandableTextView", run(new Factory() {
+
+            @Override
+            public void clear() {
+                ExpandableTextView.clearStyleCache();
+            }
+
+            @Override
+            public void create() {
+                LayoutInflater.from(mContext).inflate(R.layout.list_item, mParent, false);
+            }
+        }));
+    }
+
+    @Test
+    @UiThreadTest
+    public void expandableTextView2() {
+        report("ExpandableTextView2", run(new Factory() {
+
+            @Override
+            public void clear() {
+                ExpandableTextView2.clearStyleCache();
+            }
+
+            @Override
+            public void create() {
+                new ExpandableTextView2(mContext, null);
+            }
+        }));
+    }
+
+    /**
+     * 对比首屏20行到第一帧的耗时：创建控件、绑定文本、测量、布局和绘制，
+     * 控件分别直接创建和从主线程空闲时预先创建好的池中取出
+     */
+    @Test
+    public void expandableTextView2Pool() {
+        Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+        final String[] texts = mContext.getResources().getStringArray(R.array.sampleStrings);
+        final long[] nanos = new long[2];
+        final ExpandableTextView2Pool pool = new ExpandableTextView2Pool(mContext, FIRST_SCREEN_ROWS);
+        instrumentation.runOnMainSync(new Runnable() {
+
+            @Override
+            public void run() {
+                // 预热，加载类和样式
+                firstFrame(null, texts);
+                nanos[0] = firstFrame(null, texts);
+                pool.prefill(FIRST_SCREEN_ROWS);
+            }
+        });
+        while (pool.size() < FIRST_SCREEN_ROWS) {
+            instrumentation.waitForIdleSync();
+        }
+        instrumentation.runOnMainSync(new Runnable() {
+
+            @Override
+            public void run() {
+                nanos[1] = firstFrame(pool, texts);
+            }
+        });
+        Log.i(TAG, "ExpandableTextView2 first frame: direct " + nanos[0] / 1000 + "us, pooled "
+                + nanos[1] / 1000 + "us (" + FIRST_SCREEN_ROWS + " rows)");
+    }
+
+    /**
+     * 创建首屏的行并完成第一帧，返回耗时，需要在主线程调用
+     *
+     * @param pool 取出控件的池，为null时直接创建
+     */
+    private long firstFrame(ExpandableTextView2Pool pool, String[] texts) {
+        long start = System.nanoTime();
+        LinearLayout list = new LinearLayout(mContext);
+        list.setOrientation(LinearLayout.VERTICAL);
+        SparseBooleanArray collapsedStatus = new SparseBooleanArray();
+        ExpandableTextView2[] rows = new ExpandableTextView2[FIRST_SCREEN_ROWS];
+        for (int i = 0; i < FIRST_SCREEN_ROWS; i++) {
+            rows[i] = pool != null ? pool.acquire() : new ExpandableTextView2(mContext, null);
+            rows[i].setText(texts[i % texts.length], collapsedStatus, i);
+            list.addView(rows[i], new LinearLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT,
+                    ViewGroup.LayoutParams.WRAP_CONTENT));
+        }
+        measureAndLayout(list);
+        // 没有窗口时不会分发绘制前的回调，手动分发后按折叠结果重新布局
+        for (ExpandableTextView2 row : rows) {
+            row.findViewById(R.id.tv_expandable).getViewTreeObserver().dispatchOnPreDraw();
+        }
+        measureAndLayout(list);
+        list.draw(mCanvas);
+        return System.nanoTime() - start;
+    }
+
+    private void measureAndLayout(View view) {
+        view.measure(View.MeasureSpec.makeMeasureSpec(mCanvas.getWidth(), View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED));
+        view.layout(0, 0, view.getMeasuredWidth(), view.getMeasuredHeight());
+    }
+
+    /**
+     * 返回第一次和之后每次创建的平均耗时，单位微秒
+     */
+    private long[] run(Factory factory) {
+        // 预热，加载类和布局
+        factory.create();
+
+        long first = 0;
+        for (int i = 0; i < FIRST_ITERATIONS; i++) {
+            factory.clear();
+            long start = System.nanoTime();
+            factory.create();
+            first += System.nanoTime() - start;
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            factory.create();
+        }
+        long subsequent = System.nanoTime() - start;
+        return new long[]{first / FIRST_ITERATIONS / 1000, subsequent / ITERATIONS / 1000};
+    }
+
+    private void report(String name, long[] micros) {
+        Log.i(TAG, name + ": first " + micros[0] + "us, subsequent " + micros[1] + "us per instance");
+    }
+
+    private interface Factory {
+        void clear();
+
+        void create();
+    }
+}
@@ -0,0 +1,80 @@
+package com.chong.expandabletextview;
+
+import android.graphics.Paint;
+import android.os.Build;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按画笔设置缓存字符宽度的上限，用于不布局判断短文本
+ * <p>
+ * 只对ASCII可见字符给出上限，取全部字符逐个测量的宽度的最大值。其他字符（包括中日韩文字、代理对、
+ * 组合字符和制表符）可能由回退字体绘制，无法用少量字符确定上限，需要实际布局
+ */
+final class AdvanceBounds {
+
+    private static final int MAX_CACHED = 16;
+
+    private static final Map<List<Object>, AdvanceBounds> sCache =
+            new LinkedHashMap<List<Object>, AdvanceBounds>(MAX_CACHED, 0.75f, true) {
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<List<Object>, AdvanceBounds> eldest) {
+                    return size() > MAX_CACHED;
+                }
+            };
+
+    /**
+     * ASCII可见字符宽度的上限
+     */
+    private final float mAscii;
+
+    private AdvanceBounds(Paint paint) {
+        float[] widths = new float[128];
+        StringBuilder ascii = new StringBuilder(128);
+        for (char c = ' '; c < 0x7F; c++) {
+            ascii.append(c);
+        }
+        int count = paint.getTextWidths(ascii.toString(), widths);
+        float max = 0.0f;
+        for (int i = 0; i < count; i++) {
+            max = Math.max(max, widths[i]);
+        }
+        mAscii = (float) Math.ceil(max);
+    }
+
+    static AdvanceBounds obtain(Paint paint) {
+        Object letterSpacing = 0.0f;
+        Object fontFeatureSettings = null;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            letterSpacing = paint.getLetterSpacing();
+            fontFeatureSettings = paint.getFontFeatureSettings();
+        }
+        // 语言区域影响字体的选择
+        Object textLocale = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1
+                ? paint.getTextLocale() : null;
+        List<Object> key = Arrays.<Object>asList(paint.getTypeface(), paint.getTextSize(), paint.getTextScaleX(),
+                paint.getTextSkewX(), paint.getFlags(), letterSpacing, fontFeatureSettings, textLocale);
+        synchronized (sCache) {
+            AdvanceBounds bounds = sCache.get(key);
+            if (bounds == null) {
+                bounds = new AdvanceBounds(paint);
+                sCache.put(key, bounds);
+            }
+            return bounds;
+        }
+    }
+
+    /**
+     * 字符宽度的上限，无法确定时返回-1
+     */
+    float get(char c) {
+        if (c >= ' ' && c < 0x7F) {
+            return mAscii;
+        }
+        return -1.0f;
+    }
+}
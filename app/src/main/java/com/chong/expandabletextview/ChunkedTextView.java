@@ -0,0 +1,342 @@
+package com.chong.expandabletextview;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.util.AttributeSet;
+import android.view.View;
+import android.view.ViewTreeObserver;
+import android.widget.TextView;
+
+import java.util.Arrays;
+
+/**
+ * 按段落分块布局和绘制长文本的View，用于展开很长的文本
+ * <p>
+ * 文本按换行符分成若干块，每块至少{@link #CHUNK_CHARS}个字符，单个段落不会被拆开。
+ * 每块在第一次进入可见区域时才布局，没有布局的块按字符数估算高度；绘制时只绘制与可见区域相交的块，
+ * 离开可见区域较远的块释放布局只保留高度。块之间不计算字体的上下内边距
+ */
+public class ChunkedTextView extends View {
+
+    /**
+     * 每块最少的字符数
+     */
+    static final int CHUNK_CHARS = 2000;
+    /**
+     * 可见区域前后保留布局的块数
+     */
+    private static final int KEEP_CHUNKS = 2;
+    /**
+     * 估算平均字符宽度时测量的字符数
+     */
+    private static final int SAMPLE_CHARS = 64;
+
+    private final TextPaint mPaint = new TextPaint(TextPaint.ANTI_ALIAS_FLAG);
+    private float mSpacingMult = 1.0f;
+    private float mSpacingAdd;
+    private CharSequence mText = "";
+    /**
+     * 第i块为[mChunkStarts[i], mChunkEnds[i])，不包含块之间的换行符
+     */
+    private int[] mChunkStarts = new int[0];
+    private int[] mChunkEnds = new int[0];
+    private Layout[] mLayouts = new Layout[0];
+    /**
+     * 每块的高度，没有布局过时为估算值
+     */
+    private int[] mChunkHeights = new int[0];
+    /**
+     * 每块的顶部位置，mChunkTops[count]为总高度
+     */
+    private int[] mChunkTops = new int[1];
+    private int mLayoutWidth;
+    private int mFirstVisible = -1;
+    private int mLastVisible = -1;
+    private final Rect mVisibleRect = new Rect();
+
+    private final ViewTreeObserver.OnScrollChangedListener mScrollListener =
+            new ViewTreeObserver.OnScrollChangedListener() {
+
+                @Override
+                public void onScrollChanged() {
+                    updateVisibleChunks(false);
+                }
+            };
+
+    public ChunkedTextView(Context context) {
+        this(context, null);
+    }
+
+    public ChunkedTextView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+    }
+
+    /**
+     * 使用TextView的画笔、颜色、行距和内边距
+     */
+    public void copyStyleFrom(@NonNull TextView textView) {
+        mPaint.set(textView.getPaint());
+        mPaint.setColor(textView.getCurrentTextColor());
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            mSpacingMult = textView.getLineSpacingMultiplier();
+            mSpacingAdd = textView.getLineSpacingExtra();
+        }
+        setPadding(textView.getCompoundPaddingLeft(), textView.getCompoundPaddingTop(),
+                textView.getCompoundPaddingRight(), textView.getCompoundPaddingBottom());
+        resetLayouts();
+    }
+
+    /**
+     * 设置文本，只查找分块位置，不布局
+     */
+    public void setText(@NonNull CharSequence text) {
+        mText = text;
+        splitChunks(0);
+        resetLayouts();
+    }
+
+    /**
+     * 同一个文本对象在末尾追加内容后调用，只重新分块最后一块及追加的内容，之前的块保留布局和高度
+     */
+    public void onTextAppended() {
+        int count = mChunkHeights.length;
+        if (count == 0) {
+            setText(mText);
+            return;
+        }
+        int height = mChunkTops[count];
+        int keep = count - 1;
+        splitChunks(keep);
+        if (mLayoutWidth > 0) {
+            for (int i = keep; i < mChunkHeights.length; i++) {
+                mChunkHeights[i] = estimateHeight(i);
+            }
+        }
+        updateTops();
+        if (mChunkTops[mChunkHeights.length] != height) {
+            requestLayout();
+        }
+        invalidate();
+    }
+
+    public CharSequence getText() {
+        return mText;
+    }
+
+    /**
+     * 按换行符分块，每块至少CHUNK_CHARS个字符
+     *
+     * @param keep 保留的块数，从第keep块开始重新分块，之后的块没有布局，高度为0
+     */
+    private void splitChunks(int keep) {
+        int length = mText.length();
+        int start = keep == 0 ? 0 : mChunkEnds[keep - 1] + 1;
+        int capacity = keep + (length - start) / CHUNK_CHARS + 1;
+        int[] starts = Arrays.copyOf(mChunkStarts, capacity);
+        int[] ends = Arrays.copyOf(mChunkEnds, capacity);
+        int count = keep;
+        while (true) {
+            int end = length;
+            for (int i = Math.min(length, start + CHUNK_CHARS); i < length; i++) {
+                if (mText.charAt(i) == '\n') {
+                    end = i;
+                    break;
+                }
+            }
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+                ends = Arrays.copyOf(ends, count * 2);
+            }
+            starts[count] = start;
+            ends[count] = end;
+            count++;
+            if (end >= length) {
+                break;
+            }
+            start = end + 1;
+        }
+        mChunkStarts = Arrays.copyOf(starts, count);
+        mChunkEnds = Arrays.copyOf(ends, count);
+        mLayouts = Arrays.copyOf(mLayouts, count);
+        Arrays.fill(mLayouts, keep, count, null);
+        mChunkHeights = Arrays.copyOf(mChunkHeights, count);
+        Arrays.fill(mChunkHeights, keep, count, 0);
+        mChunkTops = new int[count + 1];
+        updateTops();
+    }
+
+    /**
+     * 宽度或样式改变后丢弃全部布局，重新估算高度
+     */
+    private void resetLayouts() {
+        Arrays.fill(mLayouts, null);
+        mLayoutWidth = 0;
+        mFirstVisible = -1;
+        mLastVisible = -1;
+        requestLayout();
+        invalidate();
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int width = MeasureSpec.getSize(widthMeasureSpec);
+        int contentWidth = Math.max(0, width - getPaddingLeft() - getPaddingRight());
+        if (contentWidth != mLayoutWidth) {
+            Arrays.fill(mLayouts, null);
+            mLayoutWidth = contentWidth;
+            for (int i = 0; i < mChunkHeights.length; i++) {
+                mChunkHeights[i] = estimateHeight(i);
+            }
+            updateTops();
+        }
+        int height = mChunkTops[mChunkTops.length - 1] + getPaddingTop() + getPaddingBottom();
+        setMeasuredDimension(width, resolveSize(height, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+        updateVisibleChunks(true);
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        getViewTreeObserver().addOnScrollChangedListener(mScrollListener);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        getViewTreeObserver().removeOnScrollChangedListener(mScrollListener);
+        super.onDetachedFromWindow();
+    }
+
+    /**
+     * 按字符数和换行数估算块的高度
+     */
+    private int estimateHeight(int chunk) {
+        int start = mChunkStarts[chunk];
+        int end = mChunkEnds[chunk];
+        if (mLayoutWidth <= 0) {
+            return 0;
+        }
+        int sampleEnd = Math.min(end, start + SAMPLE_CHARS);
+        float charWidth = sampleEnd > start ? mPaint.measureText(mText, start, sampleEnd) / (sampleEnd - start) : 0;
+        int charsPerLine = Math.max(1, (int) (mLayoutWidth / Math.max(1.0f, charWidth)));
+        int lines = 0;
+        int paragraphStart = start;
+        for (int i = start; i <= end; i++) {
+            if (i == end || mText.charAt(i) == '\n') {
+                lines += Math.max(1, (i - paragraphStart + charsPerLine - 1) / charsPerLine);
+                paragraphStart = i + 1;
+            }
+        }
+        return Math.round(lines * (mPaint.getFontMetricsInt(null) * mSpacingMult + mSpacingAdd));
+    }
+
+    private void updateTops() {
+        for (int i = 0; i < mChunkHeights.length; i++) {
+            mChunkTops[i + 1] = mChunkTops[i] + mChunkHeights[i];
+        }
+    }
+
+    /**
+     * 按当前可见区域布局需要显示的块，释放较远的块；实际高度与估算不同时重新布局
+     *
+     * @param force 可见的块没有变化时是否也重新检查，布局后块的位置可能改变
+     */
+    private void updateVisibleChunks(boolean force) {
+        if (mLayoutWidth <= 0 || mChunkHeights.length == 0 || !getLocalVisibleRect(mVisibleRect)) {
+            return;
+        }
+        int first = findChunk(mVisibleRect.top - getPaddingTop());
+        int last = findChunk(mVisibleRect.bottom - getPaddingTop());
+        if (!force && first == mFirstVisible && last == mLastVisible) {
+            return;
+        }
+        mFirstVisible = first;
+        mLastVisible = last;
+        boolean heightChanged = false;
+        for (int i = first; i <= last; i++) {
+            heightChanged |= ensureLayout(i);
+        }
+        for (int i = 0; i < mLayouts.length; i++) {
+            if (i < first - KEEP_CHUNKS || i > last + KEEP_CHUNKS) {
+                mLayouts[i] = null;
+            }
+        }
+        if (heightChanged) {
+            updateTops();
+            requestLayout();
+        }
+        invalidate();
+    }
+
+    /**
+     * 布局第chunk块
+     *
+     * @return 高度是否与之前的估算不同
+     */
+    private boolean ensureLayout(int chunk) {
+        if (mLayouts[chunk] != null) {
+            return false;
+        }
+        Layout layout = new StaticLayout(mText, mChunkStarts[chunk], mChunkEnds[chunk], mPaint, mLayoutWidth,
+                Layout.Alignment.ALIGN_NORMAL, mSpacingMult, mSpacingAdd, false);
+        mLayouts[chunk] = layout;
+        int height = layout.getHeight();
+        boolean changed = height != mChunkHeights[chunk];
+        mChunkHeights[chunk] = height;
+        return changed;
+    }
+
+    /**
+     * 包含位置y的块
+     */
+    private int findChunk(int y) {
+        int index = Arrays.binarySearch(mChunkTops, 0, mChunkHeights.length, y);
+        if (index < 0) {
+            index = -index - 2;
+        }
+        return Math.max(0, Math.min(mChunkHeights.length - 1, index));
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (mFirstVisible < 0) {
+            return;
+        }
+        for (int i = mFirstVisible; i <= mLastVisible; i++) {
+            ensureLayout(i);
+            canvas.save();
+            canvas.translate(getPaddingLeft(), getPaddingTop() + mChunkTops[i]);
+            mLayouts[i].draw(canvas);
+            canvas.restore();
+        }
+    }
+
+    /**
+     * 块的数量
+     */
+    int getChunkCount() {
+        return mChunkHeights.length;
+    }
+
+    /**
+     * 当前保留布局的块数
+     */
+    int getLaidOutChunkCount() {
+        int count = 0;
+        for (Layout layout : mLayouts) {
+            if (layout != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
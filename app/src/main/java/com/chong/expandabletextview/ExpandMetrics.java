@@ -0,0 +1,146 @@
+package com.chong.expandabletextview;
+
+import android.support.v4.os.TraceCompat;
+import android.view.View;
+
+/**
+ * 展开/折叠控件的性能统计，默认关闭
+ * <p>
+ * 开启trace后，测量、绑定、缓存查询和动画帧会在systrace中显示为对应名称的区段；
+ * 设置{@link Listener}后，每次测量、绑定、展开/折叠和动画结束时回调耗时和次数。
+ * 关闭时控件只读取一个volatile静态变量，不记录时间。可以在任意线程设置，设置后其他线程随后的统计立即生效；
+ * 回调在统计发生的线程执行，控件的统计都在主线程
+ */
+public final class ExpandMetrics {
+
+    public static final String SECTION_MEASURE = "ExpandableTextView#measure";
+    public static final String SECTION_BIND = "ExpandableTextView#bind";
+    public static final String SECTION_CACHE_LOOKUP = "TextLayoutCache#lookup";
+    public static final String SECTION_ANIMATION_FRAME = "ExpandableTextView2#animationFrame";
+
+    /**
+     * 是否开启了trace或者设置了Listener
+     */
+    private static volatile boolean sEnabled;
+    private static volatile boolean sTraceEnabled;
+    private static volatile Listener sListener;
+
+    private ExpandMetrics() {
+    }
+
+    /**
+     * 统计结果回调，时间单位为纳秒
+     */
+    public interface Listener {
+
+        void onMeasure(View view, long durationNanos);
+
+        void onBind(View view, long durationNanos);
+
+        void onCacheLookup(View view, boolean hit, long durationNanos);
+
+        /**
+         * 测量前的短文本判断
+         *
+         * @param skipped 是否不需要布局就确定了不折叠
+         */
+        void onShortTextCheck(View view, boolean skipped);
+
+        /**
+         * 一次展开/折叠完成
+         *
+         * @param relayouts 从点击到显示最终状态的布局次数
+         */
+        void onToggle(View view, int relayouts);
+
+        /**
+         * 一次动画结束或被取消
+         *
+         * @param frames        执行的帧数
+         * @param skippedFrames 按屏幕刷新率计算丢失的帧数
+         */
+        void onAnimation(View view, long durationNanos, int frames, int skippedFrames);
+    }
+
+    /**
+     * 是否在systrace中显示各区段
+     */
+    public static synchronized void setTraceEnabled(boolean enabled) {
+        sTraceEnabled = enabled;
+        sEnabled = enabled || sListener != null;
+    }
+
+    /**
+     * 设置统计回调，为null时不统计
+     */
+    public static synchronized void setListener(Listener listener) {
+        sListener = listener;
+        sEnabled = sTraceEnabled || listener != null;
+    }
+
+    static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * 开始一个区段，返回开始时间
+     */
+    static long beginSection(String name) {
+        if (sTraceEnabled) {
+            TraceCompat.beginSection(name);
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * 结束最近开始的区段，返回耗时
+     */
+    static long endSection(long startNanos) {
+        if (sTraceEnabled) {
+            TraceCompat.endSection();
+        }
+        return System.nanoTime() - startNanos;
+    }
+
+    static void onMeasure(View view, long durationNanos) {
+        Listener listener = sListener;
+        if (listener != null) {
+            listener.onMeasure(view, durationNanos);
+        }
+    }
+
+    static void onBind(View view, long durationNanos) {
+        Listener listener = sListener;
+        if (listener != null) {
+            listener.onBind(view, durationNanos);
+        }
+    }
+
+    static void onCacheLookup(View view, boolean hit, long durationNanos) {
+        Listener listener = sListener;
+        if (listener != null) {
+            listener.onCacheLookup(view, hit, durationNanos);
+        }
+    }
+
+    static void onShortTextCheck(View view, boolean skipped) {
+        Listener listener = sListener;
+        if (listener != null) {
+            listener.onShortTextCheck(view, skipped);
+        }
+    }
+
+    static void onToggle(View view, int relayouts) {
+        Listener listener = sListener;
+        if (listener != null) {
+            listener.onToggle(view, relayouts);
+        }
+    }
+
+    static void onAnimation(View view, long durationNanos, int frames, int skippedFrames) {
+        Listener listener = sListener;
+        if (listener != null) {
+            listener.onAnimation(view, durationNanos, frames, skippedFrames);
+        }
+    }
+}
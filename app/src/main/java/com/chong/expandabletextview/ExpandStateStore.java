@@ -0,0 +1,371 @@
+package com.chong.expandabletextview;
+
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.chong.expandabletextview.core.Measurement;
+
+import java.util.Arrays;
+
+/**
+ * 按稳定的item id保存展开/折叠状态和测量结果
+ * <p>
+ * 使用开放寻址的long键哈希表，状态和测量结果保存在基本类型数组中，不为每个item创建对象。
+ * 重新绑定时可以直接使用保存的测量结果，不需要重新测量。同一个store只能用于相同设置的控件。
+ * 只保存与默认状态不同的id，{@link #setAllCollapsed}修改默认状态后全部item一次完成切换
+ */
+public class ExpandStateStore {
+
+    /**
+     * 未测量时的行数和高度
+     */
+    public static final int UNKNOWN = -1;
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private static final String KEY_DEFAULT_COLLAPSED_SUFFIX = "_default_collapsed";
+
+    private static final int FIELD_WIDTH = 0;
+    private static final int FIELD_TEXT_HASH = 1;
+    private static final int FIELD_LINE_COUNT = 2;
+    private static final int FIELD_COLLAPSED_HEIGHT = 3;
+    private static final int FIELD_EXPANDED_HEIGHT = 4;
+    private static final int FIELD_COLLAPSED_END = 5;
+    private static final int FIELD_ELLIPSIS_END = 6;
+    private static final int STRIDE = 7;
+
+    private static final byte FLAG_USED = 1;
+    /**
+     * 状态与默认状态相反
+     */
+    private static final byte FLAG_TOGGLED = 1 << 1;
+    private static final byte FLAG_MEASURED = 1 << 2;
+
+    private long[] mKeys;
+    private byte[] mFlags;
+    private int[] mValues;
+    private int mSize;
+    private int mMask;
+    private int mThreshold;
+    private boolean isDefaultCollapsed = true;
+
+    public ExpandStateStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public ExpandStateStore(int initialCapacity) {
+        allocate(capacityFor(initialCapacity));
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public void clear() {
+        Arrays.fill(mFlags, (byte) 0);
+        mSize = 0;
+        isDefaultCollapsed = true;
+    }
+
+    /**
+     * 是否折叠，没有单独设置时为默认状态
+     */
+    public boolean isCollapsed(long id) {
+        int index = indexOf(id);
+        boolean toggled = index >= 0 && (mFlags[index] & FLAG_TOGGLED) != 0;
+        return toggled != isDefaultCollapsed;
+    }
+
+    public void setCollapsed(long id, boolean collapsed) {
+        if (collapsed == isDefaultCollapsed) {
+            int index = indexOf(id);
+            if (index < 0) {
+                return;
+            }
+            mFlags[index] &= ~FLAG_TOGGLED;
+            removeIfEmpty(index);
+        } else {
+            int index = insert(id);
+            mFlags[index] |= FLAG_TOGGLED;
+        }
+    }
+
+    /**
+     * 将全部item设置为折叠或展开，包括之后绑定的item，保留测量结果
+     * <p>
+     * 只修改默认状态并清除单独设置的状态，不需要逐个item写入
+     */
+    public void setAllCollapsed(boolean collapsed) {
+        isDefaultCollapsed = collapsed;
+        boolean hasEmpty = false;
+        for (int i = 0; i < mFlags.length; i++) {
+            if ((mFlags[i] & FLAG_TOGGLED) != 0) {
+                mFlags[i] &= ~FLAG_TOGGLED;
+                hasEmpty |= (mFlags[i] & FLAG_MEASURED) == 0;
+            }
+        }
+        if (hasEmpty) {
+            shift(Long.MIN_VALUE, 0);
+        }
+    }
+
+    /**
+     * 没有单独设置时是否折叠
+     */
+    public boolean isDefaultCollapsed() {
+        return isDefaultCollapsed;
+    }
+
+    /**
+     * 保存的文本行数，未测量时为{@link #UNKNOWN}
+     */
+    public int getLineCount(long id) {
+        return getMeasuredValue(id, FIELD_LINE_COUNT);
+    }
+
+    /**
+     * 保存的展开高度，未测量或只测量了折叠部分时为{@link #UNKNOWN}
+     */
+    public int getExpandedHeight(long id) {
+        return getMeasuredValue(id, FIELD_EXPANDED_HEIGHT);
+    }
+
+    /**
+     * 获取保存的测量结果，宽度或文本不同时返回null
+     *
+     * @param id    item id
+     * @param width 文本可用宽度
+     * @param text  文本内容
+     */
+    @Nullable
+    public Measurement getMeasurement(long id, int width, @NonNull CharSequence text) {
+        int index = indexOf(id);
+        if (index < 0 || (mFlags[index] & FLAG_MEASURED) == 0) {
+            return null;
+        }
+        int offset = index * STRIDE;
+        if (mValues[offset + FIELD_WIDTH] != width
+                || mValues[offset + FIELD_TEXT_HASH] != TextLayoutCache.hashTextAndSpans(text)) {
+            return null;
+        }
+        return new Measurement(mValues[offset + FIELD_LINE_COUNT],
+                mValues[offset + FIELD_COLLAPSED_HEIGHT], mValues[offset + FIELD_EXPANDED_HEIGHT],
+                mValues[offset + FIELD_COLLAPSED_END], mValues[offset + FIELD_ELLIPSIS_END]);
+    }
+
+    /**
+     * 保存测量结果
+     *
+     * @param id          item id
+     * @param width       文本可用宽度
+     * @param text        文本内容
+     * @param measurement 测量结果
+     */
+    public void putMeasurement(long id, int width, @NonNull CharSequence text,
+                               @NonNull Measurement measurement) {
+        int index = insert(id);
+        int offset = index * STRIDE;
+        mValues[offset + FIELD_WIDTH] = width;
+        mValues[offset + FIELD_TEXT_HASH] = TextLayoutCache.hashTextAndSpans(text);
+        mValues[offset + FIELD_LINE_COUNT] = measurement.lineCount;
+        mValues[offset + FIELD_COLLAPSED_HEIGHT] = measurement.collapsedHeight;
+        mValues[offset + FIELD_EXPANDED_HEIGHT] = measurement.fullHeight;
+        mValues[offset + FIELD_COLLAPSED_END] = measurement.collapsedEnd;
+        mValues[offset + FIELD_ELLIPSIS_END] = measurement.ellipsisEnd;
+        mFlags[index] |= FLAG_MEASURED;
+    }
+
+    public void remove(long id) {
+        int index = indexOf(id);
+        if (index >= 0) {
+            removeAt(index);
+        }
+    }
+
+    /**
+     * 在id位置插入了count个item，id及之后的状态整体后移
+     * <p>
+     * 只用于以位置作为id的adapter；id属于item本身的adapter插入时不需要调用，删除时调用{@link #remove}
+     */
+    public void onItemRangeInserted(long id, int count) {
+        if (count != 0) {
+            shift(id, count);
+        }
+    }
+
+    /**
+     * 从id位置删除了count个item，删除这些状态，之后的状态整体前移，只用于以位置作为id的adapter
+     */
+    public void onItemRangeRemoved(long id, int count) {
+        if (count != 0) {
+            shift(id + count, -count);
+        }
+    }
+
+    /**
+     * 将id大于等于fromId的状态移动delta；delta为负数时，先删除[fromId + delta, fromId)范围的状态。
+     * 重建时丢弃既没有单独设置状态也没有测量结果的id
+     */
+    private void shift(long fromId, int delta) {
+        if (mSize == 0) {
+            return;
+        }
+        long[] oldKeys = mKeys;
+        byte[] oldFlags = mFlags;
+        int[] oldValues = mValues;
+        allocate(oldKeys.length);
+        mSize = 0;
+        long removedFrom = fromId + Math.min(delta, 0);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if ((oldFlags[i] & (FLAG_TOGGLED | FLAG_MEASURED)) == 0) {
+                continue;
+            }
+            long key = oldKeys[i];
+            if (key >= fromId) {
+                key += delta;
+            } else if (key >= removedFrom) {
+                continue;
+            }
+            int index = insert(key);
+            mFlags[index] = oldFlags[i];
+            System.arraycopy(oldValues, i * STRIDE, mValues, index * STRIDE, STRIDE);
+        }
+    }
+
+    /**
+     * 只保存默认状态和与默认状态不同的id，测量结果与屏幕宽度和字体有关，不保存
+     */
+    public void saveInstanceState(@NonNull Bundle outState, @NonNull String key) {
+        long[] toggled = new long[mSize];
+        int count = 0;
+        for (int i = 0; i < mKeys.length; i++) {
+            if ((mFlags[i] & FLAG_TOGGLED) != 0) {
+                toggled[count++] = mKeys[i];
+            }
+        }
+        outState.putLongArray(key, Arrays.copyOf(toggled, count));
+        outState.putBoolean(key + KEY_DEFAULT_COLLAPSED_SUFFIX, isDefaultCollapsed);
+    }
+
+    public void restoreInstanceState(@Nullable Bundle savedInstanceState, @NonNull String key) {
+        if (savedInstanceState == null) {
+            return;
+        }
+        long[] toggled = savedInstanceState.getLongArray(key);
+        if (toggled == null) {
+            return;
+        }
+        setAllCollapsed(savedInstanceState.getBoolean(key + KEY_DEFAULT_COLLAPSED_SUFFIX, true));
+        for (long id : toggled) {
+            setCollapsed(id, !isDefaultCollapsed);
+        }
+    }
+
+    private int getMeasuredValue(long id, int field) {
+        int index = indexOf(id);
+        if (index < 0 || (mFlags[index] & FLAG_MEASURED) == 0) {
+            return UNKNOWN;
+        }
+        return mValues[index * STRIDE + field];
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = DEFAULT_CAPACITY;
+        while (capacity * 3 / 4 < expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private void allocate(int capacity) {
+        mKeys = new long[capacity];
+        mFlags = new byte[capacity];
+        mValues = new int[capacity * STRIDE];
+        mMask = capacity - 1;
+        mThreshold = capacity * 3 / 4;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * 查找id的位置，不存在时返回~插入位置
+     */
+    private int indexOf(long id) {
+        int index = hash(id) & mMask;
+        while (mFlags[index] != 0) {
+            if (mKeys[index] == id) {
+                return index;
+            }
+            index = (index + 1) & mMask;
+        }
+        return ~index;
+    }
+
+    private int insert(long id) {
+        int index = indexOf(id);
+        if (index >= 0) {
+            return index;
+        }
+        if (mSize >= mThreshold) {
+            grow();
+            index = indexOf(id);
+        }
+        index = ~index;
+        mKeys[index] = id;
+        mFlags[index] = FLAG_USED;
+        Arrays.fill(mValues, index * STRIDE, (index + 1) * STRIDE, UNKNOWN);
+        mSize++;
+        return index;
+    }
+
+    private void grow() {
+        long[] oldKeys = mKeys;
+        byte[] oldFlags = mFlags;
+        int[] oldValues = mValues;
+        allocate(oldKeys.length << 1);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldFlags[i] == 0) {
+                continue;
+            }
+            int index = ~indexOf(oldKeys[i]);
+            mKeys[index] = oldKeys[i];
+            mFlags[index] = oldFlags[i];
+            System.arraycopy(oldValues, i * STRIDE, mValues, index * STRIDE, STRIDE);
+        }
+    }
+
+    private void removeIfEmpty(int index) {
+        if ((mFlags[index] & (FLAG_TOGGLED | FLAG_MEASURED)) == 0) {
+            removeAt(index);
+        }
+    }
+
+    /**
+     * 删除后将之后探测链上的元素前移，不使用删除标记
+     */
+    private void removeAt(int index) {
+        mFlags[index] = 0;
+        mSize--;
+        int hole = index;
+        int next = index;
+        while (true) {
+            next = (next + 1) & mMask;
+            if (mFlags[next] == 0) {
+                return;
+            }
+            int home = hash(mKeys[next]) & mMask;
+            boolean reachable = hole < next ? (home > hole && home <= next) : (home > hole || home <= next);
+            if (!reachable) {
+                mKeys[hole] = mKeys[next];
+                mFlags[hole] = mFlags[next];
+                System.arraycopy(mValues, next * STRIDE, mValues, hole * STRIDE, STRIDE);
+                mFlags[next] = 0;
+                hole = next;
+            }
+        }
+    }
+}
@@ -1,20 +1,39 @@
 package com.chong.expandabletextview;
 
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
+import android.animation.ValueAnimator;
 import android.content.Context;
 import android.content.res.TypedArray;
 import android.graphics.drawable.Drawable;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v4.content.ContextCompat;
+import android.support.v4.view.ViewCompat;
+import android.text.Editable;
+import android.text.Layout;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.TextPaint;
 import android.text.TextUtils;
+import android.text.method.LinkMovementMethod;
+import android.text.style.ClickableSpan;
 import android.util.AttributeSet;
 import android.util.SparseBooleanArray;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewStub;
+import android.view.ViewTreeObserver;
+import android.view.animation.AccelerateDecelerateInterpolator;
 import android.widget.ImageButton;
 import android.widget.LinearLayout;
 import android.widget.TextView;
 
+import com.chong.expandabletextview.core.CollapseEngine;
+import com.chong.expandabletextview.core.Measurement;
+
+import java.util.concurrent.Executor;
+
 /**
  * 可以展开折叠的带过渡动画的TextView
  */
@@ -25,18 +44,46 @@ public class ExpandableTextView extends LinearLayout implements View.OnClickList
      * 默认最大折叠最大行数
      */
     private static final int MAX_COLLAPSED_LINES = 8;
+    /**
+     * 内嵌展开文本前的省略号
+     */
+    private static final String ELLIPSIS = "\u2026";
+    /**
+     * 默认展开/折叠动画时长
+     */
+    private static final int DEFAULT_ANIMATION_DURATION = 300;
+    /**
+     * 同一主题下属性相同的控件共享的样式
+     */
+    private static final StyleCache<Style> STYLE_CACHE = new StyleCache<>();
+
+    private static final StyleCache.Resolver<Style> STYLE_RESOLVER = new StyleCache.Resolver<Style>() {
+
+        @Override
+        public Style resolve(Context context, AttributeSet attrs) {
+            return new Style(context, attrs);
+        }
+    };
     /**
      * 内容文本
      */
     protected TextView mTvContent;
     /**
-     * 展开/折叠按钮
+     * 展开/折叠按钮，布局中为ViewStub时第一次需要显示才创建
      */
     protected ImageButton mBtnState;
     /**
-     * 展开/折叠文本
+     * 展开/折叠文本，布局中为ViewStub时第一次需要显示才创建
      */
     protected TextView mTvState;
+    /**
+     * 展开/折叠按钮的ViewStub，创建后为null
+     */
+    private ViewStub mBtnStateStub;
+    /**
+     * 展开/折叠文本的ViewStub，创建后为null
+     */
+    private ViewStub mTvStateStub;
     /**
      * 是否需要重新布局
      */
@@ -81,10 +128,119 @@ public class ExpandableTextView extends LinearLayout implements View.OnClickList
      * 列表中位置
      */
     private int mPosition;
+    /**
+     * 在列表中，按item id保存状态和测量结果
+     */
+    private ExpandStateStore mStateStore;
+    /**
+     * 列表中item id
+     */
+    private long mItemId;
     /**
      * 只需要展开，不需要折叠
      */
     private boolean isOnlyExpand;
+    /**
+     * 折叠时在末行内嵌省略号和可点击的展开文本，不显示单独的展开按钮
+     */
+    private boolean isInlineExpand;
+    /**
+     * mTvContent当前是否显示了内嵌的展开文本
+     */
+    private boolean isInlineShown;
+    /**
+     * 内嵌的展开文本的点击事件
+     */
+    private final ClickableSpan mInlineExpandSpan = new ClickableSpan() {
+
+        @Override
+        public void onClick(View widget) {
+            toggle();
+        }
+
+        @Override
+        public void updateDrawState(TextPaint ds) {
+            ds.setColor(isNeedText && mTvState != null ? mTvState.getCurrentTextColor() : ds.linkColor);
+            ds.setUnderlineText(false);
+        }
+    };
+    /**
+     * 完整的文本内容，折叠时mTvContent只显示折叠行数内的部分
+     */
+    private CharSequence mText = "";
+    /**
+     * mTvContent当前显示到mText的位置
+     */
+    private int mDisplayEnd = -1;
+    /**
+     * mTvContent当前的最大显示行数
+     */
+    private int mContentMaxLines = -1;
+    /**
+     * 上次测量时文本的可用宽度
+     */
+    private int mContentWidth = -1;
+    /**
+     * 后台测量使用的Executor，为null时在主线程测量
+     */
+    private Executor mMeasureExecutor;
+    /**
+     * 每次设置文本时递增，用于丢弃已经过期的后台测量结果
+     */
+    private int mBindGeneration;
+    /**
+     * 最近一次测量得到的文本行数
+     */
+    private int mLineCount;
+    /**
+     * 通过{@link #append}追加文本时使用的可变文本，只在没有后台测量时原地修改。
+     * 显示全部文本时mTvContent或mChunkView直接使用这个对象，不再复制
+     */
+    private SpannableStringBuilder mAppendText;
+    /**
+     * 是否正在等待后台测量结果
+     */
+    private boolean isMeasurePending;
+    /**
+     * 开启统计时，是否正在统计本次展开/折叠的测量次数
+     */
+    private boolean isToggleMeasuring;
+    /**
+     * 开启统计时，本次展开/折叠的测量次数
+     */
+    private int mToggleRelayouts;
+    /**
+     * 展开/折叠动画时长，为0时不显示动画
+     */
+    private int mAnimationDuration;
+    /**
+     * 展开/折叠动画，每帧改变内容的布局高度，文本只在动画开始前布局一次
+     */
+    private ValueAnimator mAnimator;
+    /**
+     * 动画中内容当前显示的高度，没有动画时为-1
+     */
+    private int mAnimatedHeight = -1;
+    /**
+     * 动画开始前内容布局参数中的高度，动画结束后恢复
+     */
+    private int mContentLayoutHeight;
+    /**
+     * 展开后等待布局完成再开始动画
+     */
+    private ViewTreeObserver.OnPreDrawListener mPendingExpand;
+    /**
+     * 展开时按块布局和绘制的最小文本长度，为0时不分块
+     */
+    private int mVirtualizeLength;
+    /**
+     * 展开很长的文本时代替mTvContent显示，第一次需要时才创建
+     */
+    private ChunkedTextView mChunkView;
+    /**
+     * 预计会使用的控件宽度，绑定文本时提前测量每个宽度，为null时不提前测量
+     */
+    private int[] mWidthBuckets;
 
     public ExpandableTextView(Context context) {
         this(context, null);
@@ -111,41 +267,249 @@ public class ExpandableTextView extends LinearLayout implements View.OnClickList
     @Override
     public void onClick(View view) {
         if (isNeedDrawable) {
-            if (mBtnState.getVisibility() != View.VISIBLE) {
+            if (mBtnState == null || mBtnState.getVisibility() != View.VISIBLE) {
                 return;
             }
         }
         if (isNeedText) {
-            if (mTvState.getVisibility() != View.VISIBLE) {
+            if (mTvState == null || mTvState.getVisibility() != View.VISIBLE) {
                 return;
             }
         }
+        toggle();
+    }
 
+    /**
+     * 切换展开/折叠状态
+     */
+    private void toggle() {
+        int fromHeight = mAnimatedHeight >= 0 ? mAnimatedHeight : mTvContent.getHeight();
+        cancelAnimation();
+        boolean animate = canAnimate();
         mCollapsed = !mCollapsed;
-        if (isNeedDrawable) {
-            if (isOnlyExpand && !mCollapsed) {
-                mBtnState.setVisibility(GONE);
-            } else {
-                mBtnState.setVisibility(VISIBLE);
-            }
+        if (animate && mCollapsed) {
+            // 折叠时保持展开的文本布局，只减小内容的高度，动画结束后再按折叠状态布局一次
+            updateStateContent();
+            animateCollapse(fromHeight);
+        } else {
+            setStateVisibility(isOnlyExpand && !mCollapsed ? GONE : VISIBLE);
+            updateStateContent();
             isRelayout = true;
-            mBtnState.setImageDrawable(mCollapsed ? mExpandDrawable : mCollapseDrawable);
-        }
-        if (isNeedText) {
-            if (isOnlyExpand && !mCollapsed) {
-                mTvState.setVisibility(GONE);
-            } else {
-                mTvState.setVisibility(VISIBLE);
+            requestLayout();
+            if (animate) {
+                // 展开时先按全部文本布局一次，再从原来的高度逐帧增加内容的高度
+                animateExpandAfterLayout(fromHeight);
             }
-            isRelayout = true;
-            mTvState.setText(mCollapsed ? mExpandText : mCollapseText);
         }
-        requestLayout();
+        if (ExpandMetrics.isEnabled()) {
+            isToggleMeasuring = true;
+            mToggleRelayouts = 0;
+        }
 
         // 按位置保存展开/折叠状态
         if (mCollapsedStatus != null) {
             mCollapsedStatus.put(mPosition, mCollapsed);
         }
+        if (mStateStore != null) {
+            mStateStore.setCollapsed(mItemId, mCollapsed);
+        }
+    }
+
+    /**
+     * 设置展开/折叠动画时长，为0时不显示动画
+     */
+    public void setAnimationDuration(int duration) {
+        mAnimationDuration = duration;
+    }
+
+    private boolean canAnimate() {
+        return mAnimationDuration > 0 && ViewCompat.isLaidOut(this) && mTvContent.getLayout() != null && !isVirtualizeText();
+    }
+
+    /**
+     * 设置展开时按块布局和绘制的最小文本长度，为0时不分块
+     * <p>
+     * 达到长度的文本展开时只布局和绘制可见区域附近的段落，不显示展开/折叠动画
+     */
+    public void setVirtualizeLength(int length) {
+        if (length == mVirtualizeLength) {
+            return;
+        }
+        mVirtualizeLength = length;
+        if (!mCollapsed) {
+            isRelayout = true;
+            requestLayout();
+        }
+    }
+
+    /**
+     * 文本是否达到分块显示的长度
+     */
+    private boolean isVirtualizeText() {
+        return mVirtualizeLength > 0 && mText.length() >= mVirtualizeLength;
+    }
+
+    /**
+     * 在下一次布局完成后，从fromHeight展开到内容布局后的高度
+     */
+    private void animateExpandAfterLayout(final int fromHeight) {
+        mPendingExpand = new ViewTreeObserver.OnPreDrawListener() {
+
+            @Override
+            public boolean onPreDraw() {
+                getViewTreeObserver().removeOnPreDrawListener(this);
+                mPendingExpand = null;
+                int layoutHeight = mTvContent.getHeight();
+                if (fromHeight >= layoutHeight) {
+                    return true;
+                }
+                // 按原来的高度重新布局后再绘制，不显示一帧展开后的高度
+                startAnimation(fromHeight, layoutHeight, false);
+                return false;
+            }
+        };
+        getViewTreeObserver().addOnPreDrawListener(mPendingExpand);
+    }
+
+    /**
+     * 从fromHeight折叠到折叠行数的高度，动画结束后重新布局
+     */
+    private void animateCollapse(int fromHeight) {
+        Layout layout = mTvContent.getLayout();
+        int line = Math.min(mMaxCollapsedLines, layout.getLineCount());
+        int toHeight = layout.getLineTop(line) + mTvContent.getCompoundPaddingTop()
+                + mTvContent.getCompoundPaddingBottom();
+        startAnimation(fromHeight, toHeight, true);
+    }
+
+    /**
+     * 每帧设置内容的布局高度，控件和列表中之后的item由外层按新的高度布局。
+     * 内容的宽度和文本不变，TextView复用已有的文本布局，只裁剪到新的高度
+     *
+     * @param relayout 动画结束后是否需要按当前状态重新布局
+     */
+    private void startAnimation(int fromHeight, int toHeight, final boolean relayout) {
+        mContentLayoutHeight = mTvContent.getLayoutParams().height;
+        mAnimator = ValueAnimator.ofInt(fromHeight, toHeight);
+        mAnimator.setDuration(mAnimationDuration);
+        mAnimator.setInterpolator(new AccelerateDecelerateInterpolator());
+        mAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+
+            @Override
+            public void onAnimationUpdate(ValueAnimator animation) {
+                setAnimatedHeight((Integer) animation.getAnimatedValue());
+            }
+        });
+        mAnimator.addListener(new AnimatorListenerAdapter() {
+
+            @Override
+            public void onAnimationEnd(Animator animation) {
+                mAnimator = null;
+                if (relayout) {
+                    isRelayout = true;
+                }
+                clearAnimatedHeight();
+            }
+        });
+        setAnimatedHeight(fromHeight);
+        mAnimator.start();
+    }
+
+    private void setAnimatedHeight(int height) {
+        if (height == mAnimatedHeight) {
+            return;
+        }
+        mAnimatedHeight = height;
+        ViewGroup.LayoutParams params = mTvContent.getLayoutParams();
+        params.height = height;
+        mTvContent.setLayoutParams(params);
+    }
+
+    /**
+     * 恢复内容原来的布局高度并重新布局
+     */
+    private void clearAnimatedHeight() {
+        mAnimatedHeight = -1;
+        ViewGroup.LayoutParams params = mTvContent.getLayoutParams();
+        params.height = mContentLayoutHeight;
+        mTvContent.setLayoutParams(params);
+    }
+
+    /**
+     * 结束正在执行或等待开始的动画，折叠动画结束时会按折叠状态重新布局
+     */
+    private void cancelAnimation() {
+        if (mPendingExpand != null) {
+            getViewTreeObserver().removeOnPreDrawListener(mPendingExpand);
+            mPendingExpand = null;
+        }
+        if (mAnimator != null) {
+            mAnimator.cancel();
+        }
+    }
+
+    /**
+     * 按列表中保存的状态更新展开/折叠状态，状态未改变时不重新布局
+     * <p>
+     * 状态在{@link ExpandStateStore#setAllCollapsed}等批量操作中统一修改后调用，
+     * 只标记需要重新布局，同一帧内的多个控件在一次布局中完成测量
+     *
+     * @return 状态是否改变
+     */
+    public boolean syncCollapsedState() {
+        boolean collapsed;
+        if (mStateStore != null) {
+            collapsed = mStateStore.isCollapsed(mItemId);
+        } else if (mCollapsedStatus != null) {
+            collapsed = mCollapsedStatus.get(mPosition, true);
+        } else {
+            return false;
+        }
+        if (collapsed == mCollapsed) {
+            return false;
+        }
+        cancelAnimation();
+        mCollapsed = collapsed;
+        updateStateContent();
+        isRelayout = true;
+        requestLayout();
+        return true;
+    }
+
+    /**
+     * 批量修改状态后，更新parent中全部ExpandableTextView的展开/折叠状态
+     * <p>
+     * 只处理已经添加到parent中的控件，列表中屏幕外的item在绑定或者重新添加时更新
+     *
+     * @return 状态改变的控件数量
+     */
+    public static int syncCollapsedStates(@NonNull ViewGroup parent) {
+        int changed = 0;
+        int count = parent.getChildCount();
+        for (int i = 0; i < count; i++) {
+            View child = parent.getChildAt(i);
+            if (child instanceof ExpandableTextView) {
+                if (((ExpandableTextView) child).syncCollapsedState()) {
+                    changed++;
+                }
+            } else if (child instanceof ViewGroup) {
+                changed += syncCollapsedStates((ViewGroup) child);
+            }
+        }
+        return changed;
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        // RecyclerView缓存的item重新添加时不会重新绑定，这里补上期间批量修改的状态
+        syncCollapsedState();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        cancelAnimation();
+        super.onDetachedFromWindow();
     }
 
     @Override
@@ -155,123 +519,817 @@ public class ExpandableTextView extends LinearLayout implements View.OnClickList
 
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        if (!ExpandMetrics.isEnabled()) {
+            measureInternal(widthMeasureSpec, heightMeasureSpec);
+            return;
+        }
+        long start = ExpandMetrics.beginSection(ExpandMetrics.SECTION_MEASURE);
+        measureInternal(widthMeasureSpec, heightMeasureSpec);
+        ExpandMetrics.onMeasure(this, ExpandMetrics.endSection(start));
+        if (isToggleMeasuring) {
+            mToggleRelayouts++;
+        }
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        super.onLayout(changed, l, t, r, b);
+        if (isToggleMeasuring) {
+            isToggleMeasuring = false;
+            ExpandMetrics.onToggle(this, mToggleRelayouts);
+        }
+    }
+
+    private void measureInternal(int widthMeasureSpec, int heightMeasureSpec) {
+        int contentWidth = getContentWidth(widthMeasureSpec);
+        if (contentWidth > 0 && mContentWidth > 0 && contentWidth != mContentWidth && !isMeasurePending) {
+            // 宽度改变后按新的宽度重新判断折叠，提前测量过的宽度直接使用缓存的结果
+            isRelayout = true;
+        }
         // 如果没有改变显示内容，或者显示内容为空，执行super.onMeasure()并返回
         if (!isRelayout || getVisibility() == View.GONE) {
             super.onMeasure(widthMeasureSpec, heightMeasureSpec);
             return;
         }
         isRelayout = false;
-        // 先隐藏状态按钮，将文字最大显示行数设置到最大，后面再根据测量情况修改
-        if (isNeedDrawable) {
-            mBtnState.setVisibility(View.GONE);
+        if (!mCollapsed && isVirtualizeText()) {
+            if (contentWidth > 0) {
+                mContentWidth = contentWidth;
+            }
+            measureVirtualized(widthMeasureSpec, heightMeasureSpec);
+            return;
         }
-        if (isNeedText) {
-            mTvState.setVisibility(View.GONE);
+        if (mChunkView != null && mChunkView.getVisibility() != GONE) {
+            // 释放分块的文本和布局，mTvContent按当前状态重新设置文本
+            mChunkView.setVisibility(GONE);
+            mChunkView.setText("");
+            mTvContent.setVisibility(VISIBLE);
+            mDisplayEnd = -1;
         }
-        mTvContent.setMaxLines(Integer.MAX_VALUE);
-        super.onMeasure(widthMeasureSpec, heightMeasureSpec);
 
-        // 未超过最大折叠行数
-        if (mTvContent.getLineCount() <= mMaxCollapsedLines) {
+        TextLayoutCache.Key key = obtainCacheKey(widthMeasureSpec);
+        Measurement measurement = getCachedMeasurement(key, contentWidth);
+        boolean isContentMeasured = false;
+        if (measurement != null) {
+            // 已经测量过相同内容，直接使用缓存的测量结果
+            mContentWidth = contentWidth;
+            applyMeasurement(measurement, true);
+        } else if (isMeasurePending && key != null && mContentWidth == contentWidth) {
+            // 正在后台测量，先按折叠状态显示，测量结果返回后再重新布局
+            setContentMaxLines(mMaxCollapsedLines);
+            setStateVisibility(GONE);
+        } else if (key != null && mCollapsed) {
+            isMeasurePending = false;
+            mContentWidth = contentWidth;
+            // 折叠状态只对折叠行数再多一行的文本布局，展开时再对全部文本布局
+            applyMeasurement(measureCollapsed(key, contentWidth), true);
+        } else {
+            isMeasurePending = false;
+            if (key != null) {
+                mContentWidth = contentWidth;
+            }
+            // 只对文本布局一次，从中得到行数和折叠/展开高度
+            setDisplayText(mText.length());
+            setContentMaxLines(Integer.MAX_VALUE);
+            measureChildWithMargins(mTvContent, widthMeasureSpec, 0, heightMeasureSpec, 0);
+            measurement = measureContent(mTvContent.getLineCount());
+            if (key != null) {
+                putMeasurement(key, contentWidth, measurement);
+            }
+            // 需要折叠时，修改最大行数后TextView会复用已有的布局重新测量高度
+            isContentMeasured = !applyMeasurement(measurement, false);
+        }
+        measureVertical(widthMeasureSpec, heightMeasureSpec, isContentMeasured);
+    }
+
+    /**
+     * 展开很长的文本时，由ChunkedTextView按段落分块显示，mTvContent不对文本布局
+     * <p>
+     * 达到分块长度的文本总是视为需要折叠
+     */
+    private void measureVirtualized(int widthMeasureSpec, int heightMeasureSpec) {
+        isMeasurePending = false;
+        ChunkedTextView chunkView = obtainChunkView();
+        chunkView.setText(mText);
+        chunkView.setVisibility(VISIBLE);
+        mTvContent.setVisibility(GONE);
+        mTvContent.setText(null);
+        mDisplayEnd = -1;
+        isInlineShown = false;
+        CollapseEngine.ToggleState state = CollapseEngine.getToggleState(Integer.MAX_VALUE, mMaxCollapsedLines,
+                false, isOnlyExpand, isInlineExpand);
+        setStateVisibility(state != CollapseEngine.ToggleState.HIDDEN ? VISIBLE : GONE);
+        measureVertical(widthMeasureSpec, heightMeasureSpec, false);
+    }
+
+    /**
+     * 创建分块显示的控件，放在mTvContent之后，使用mTvContent的样式和布局参数
+     */
+    private ChunkedTextView obtainChunkView() {
+        if (mChunkView == null) {
+            mChunkView = new ChunkedTextView(getContext());
+            mChunkView.copyStyleFrom(mTvContent);
+            LayoutParams params = new LayoutParams((MarginLayoutParams) mTvContent.getLayoutParams());
+            params.height = LayoutParams.WRAP_CONTENT;
+            // 正在测量，不需要再请求布局
+            addViewInLayout(mChunkView, indexOfChild(mTvContent) + 1, params, true);
+        }
+        return mChunkView;
+    }
+
+    /**
+     * 按顺序竖直测量子View，每个子View只测量一次，不支持layout_weight和竖直方向的gravity
+     *
+     * @param isContentMeasured mTvContent是否已经按当前状态测量过
+     */
+    private void measureVertical(int widthMeasureSpec, int heightMeasureSpec, boolean isContentMeasured) {
+        int maxWidth = 0;
+        int usedHeight = 0;
+        int childState = 0;
+        int count = getChildCount();
+        for (int i = 0; i < count; i++) {
+            View child = getChildAt(i);
+            if (child.getVisibility() == GONE) {
+                continue;
+            }
+            if (child != mTvContent || !isContentMeasured) {
+                measureChildWithMargins(child, widthMeasureSpec, 0, heightMeasureSpec, usedHeight);
+            }
+            MarginLayoutParams params = (MarginLayoutParams) child.getLayoutParams();
+            usedHeight += child.getMeasuredHeight() + params.topMargin + params.bottomMargin;
+            maxWidth = Math.max(maxWidth, child.getMeasuredWidth() + params.leftMargin + params.rightMargin);
+            childState = combineMeasuredStates(childState, child.getMeasuredState());
+        }
+
+        maxWidth = Math.max(maxWidth + getPaddingLeft() + getPaddingRight(), getSuggestedMinimumWidth());
+        int height = Math.max(usedHeight + getPaddingTop() + getPaddingBottom(), getSuggestedMinimumHeight());
+        setMeasuredDimension(resolveSizeAndState(maxWidth, widthMeasureSpec, childState),
+                resolveSizeAndState(height, heightMeasureSpec, childState << MEASURED_HEIGHT_STATE_SHIFT));
+
+        // 宽度不确定时，与LinearLayout一样让match_parent的子View使用统一的宽度
+        if (MeasureSpec.getMode(widthMeasureSpec) != MeasureSpec.EXACTLY) {
+            int uniformWidthSpec = MeasureSpec.makeMeasureSpec(getMeasuredWidth(), MeasureSpec.EXACTLY);
+            for (int i = 0; i < count; i++) {
+                View child = getChildAt(i);
+                if (child.getVisibility() == GONE || child.getLayoutParams().width != LayoutParams.MATCH_PARENT) {
+                    continue;
+                }
+                MarginLayoutParams params = (MarginLayoutParams) child.getLayoutParams();
+                int oldHeight = params.height;
+                params.height = child.getMeasuredHeight();
+                measureChildWithMargins(child, uniformWidthSpec, 0, heightMeasureSpec, 0);
+                params.height = oldHeight;
+            }
+        }
+    }
+
+    /**
+     * 根据测量结果设置最大显示行数和展开/折叠按钮的显示状态
+     *
+     * @param measurement 测量结果
+     * @param trimText    折叠时是否只显示折叠行数内的文本，这样TextView不需要对全部文本进行布局
+     * @return mTvContent的显示状态是否改变，改变后需要重新测量
+     */
+    private boolean applyMeasurement(Measurement measurement, boolean trimText) {
+        mLineCount = measurement.lineCount;
+        boolean collapsed = mCollapsed && CollapseEngine.needsCollapse(measurement.lineCount, mMaxCollapsedLines);
+        // 末行内嵌展开文本时，不显示单独的展开按钮
+        boolean inline = collapsed && isInlineExpand;
+        boolean changed = false;
+        if (inline || trimText) {
+            changed = setDisplayText(CollapseEngine.getDisplayEnd(measurement, mText.length(), mMaxCollapsedLines,
+                    mCollapsed, isInlineExpand), inline);
+        }
+        changed |= setContentMaxLines(collapsed ? mMaxCollapsedLines : Integer.MAX_VALUE);
+        CollapseEngine.ToggleState state = CollapseEngine.getToggleState(measurement.lineCount, mMaxCollapsedLines,
+                mCollapsed, isOnlyExpand, isInlineExpand);
+        setStateVisibility(state != CollapseEngine.ToggleState.HIDDEN ? VISIBLE : GONE);
+        return changed;
+    }
+
+    /**
+     * 设置mTvContent的最大显示行数，未改变时不重新设置
+     *
+     * @return 是否改变
+     */
+    private boolean setContentMaxLines(int maxLines) {
+        if (maxLines == mContentMaxLines) {
+            return false;
+        }
+        mContentMaxLines = maxLines;
+        mTvContent.setMaxLines(maxLines);
+        return true;
+    }
+
+    /**
+     * 设置展开/折叠按钮和文本的显示状态，需要显示时才创建ViewStub中的控件
+     */
+    private void setStateVisibility(int visibility) {
+        if (visibility == VISIBLE) {
+            inflateStateViews();
+        }
+        if (isNeedDrawable && mBtnState != null) {
+            mBtnState.setVisibility(visibility);
+        }
+        if (isNeedText && mTvState != null) {
+            mTvState.setVisibility(visibility);
+        }
+    }
+
+    /**
+     * 按展开/折叠状态设置已经创建的按钮图标和文本
+     */
+    private void updateStateContent() {
+        if (isNeedDrawable && mBtnState != null) {
+            mBtnState.setImageDrawable(mCollapsed ? mExpandDrawable : mCollapseDrawable);
+        }
+        if (isNeedText && mTvState != null) {
+            mTvState.setText(mCollapsed ? mExpandText : mCollapseText);
+        }
+    }
+
+    /**
+     * 创建ViewStub中的展开/折叠按钮和文本，之后重新绑定时复用
+     */
+    private void inflateStateViews() {
+        if (mBtnStateStub != null) {
+            ViewStub stub = mBtnStateStub;
+            mBtnStateStub = null;
+            setBtnState((ImageButton) stub.inflate());
+        }
+        if (mTvStateStub != null) {
+            ViewStub stub = mTvStateStub;
+            mTvStateStub = null;
+            setTvState((TextView) stub.inflate());
+        }
+    }
+
+    private void setBtnState(ImageButton btnState) {
+        mBtnState = btnState;
+        mBtnState.setImageDrawable(mCollapsed ? mExpandDrawable : mCollapseDrawable);
+        mBtnState.setOnClickListener(this);
+    }
+
+    private void setTvState(TextView tvState) {
+        mTvState = tvState;
+        mTvState.setText(mCollapsed ? mExpandText : mCollapseText);
+        mTvState.setOnClickListener(this);
+    }
+
+    /**
+     * 设置mTvContent显示的文本为mText的[0, end)部分，未改变时不重新设置
+     *
+     * @return 是否改变
+     */
+    private boolean setDisplayText(int end) {
+        return setDisplayText(end, false);
+    }
+
+    /**
+     * 设置mTvContent显示的文本为mText的[0, end)部分，未改变时不重新设置
+     *
+     * @param inline 是否在文本后添加省略号和可点击的展开文本
+     * @return 是否改变
+     */
+    private boolean setDisplayText(int end, boolean inline) {
+        end = Math.min(end, mText.length());
+        if (end == mDisplayEnd && inline == isInlineShown) {
+            return false;
+        }
+        mDisplayEnd = end;
+        isInlineShown = inline;
+        if (inline) {
+            SpannableStringBuilder builder = new SpannableStringBuilder(mText, 0, end);
+            builder.append(ELLIPSIS);
+            int start = builder.length();
+            builder.append(mExpandText);
+            builder.setSpan(mInlineExpandSpan, start, builder.length(), Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+            mTvContent.setText(builder);
+        } else if (end == mText.length() && mText == mAppendText) {
+            // 追加的文本以可编辑文本显示，TextView与mAppendText共用一个缓冲区
+            mTvContent.setText(mText, TextView.BufferType.EDITABLE);
+        } else {
+            mTvContent.setText(end == mText.length() ? mText : mText.subSequence(0, end));
+        }
+        return true;
+    }
+
+    /**
+     * 末行内嵌的省略号和展开文本的宽度，没有内嵌时为0
+     */
+    private float getSuffixWidth() {
+        if (!isInlineExpand) {
+            return 0.0f;
+        }
+        TextPaint paint = mTvContent.getPaint();
+        return paint.measureText(ELLIPSIS) + paint.measureText(mExpandText, 0, mExpandText.length());
+    }
+
+    /**
+     * 获取当前状态可以使用的缓存测量结果，展开状态需要测量了全部文本的结果
+     * <p>
+     * {@link TextLayoutCache}中没有时，再查询{@link ExpandStateStore}中保存的结果
+     */
+    @Nullable
+    private Measurement getCachedMeasurement(@Nullable TextLayoutCache.Key key, int contentWidth) {
+        if (key == null) {
+            return null;
+        }
+        boolean isMetricsEnabled = ExpandMetrics.isEnabled();
+        long start = isMetricsEnabled ? ExpandMetrics.beginSection(ExpandMetrics.SECTION_CACHE_LOOKUP) : 0;
+        Measurement measurement = TextLayoutCache.getInstance().get(key);
+        if (measurement == null && mStateStore != null) {
+            measurement = mStateStore.getMeasurement(mItemId, contentWidth, mText);
+            if (measurement != null) {
+                TextLayoutCache.getInstance().put(key, measurement);
+            }
+        }
+        if (isMetricsEnabled) {
+            ExpandMetrics.onCacheLookup(this, measurement != null, ExpandMetrics.endSection(start));
+        }
+        if (measurement == null || !(mCollapsed || measurement.isComplete())) {
+            return null;
+        }
+        return measurement;
+    }
+
+    /**
+     * 测量结果放入{@link TextLayoutCache}，在列表中使用时同时保存到{@link ExpandStateStore}
+     */
+    private void putMeasurement(TextLayoutCache.Key key, int contentWidth, Measurement measurement) {
+        TextLayoutCache.getInstance().put(key, measurement);
+        if (mStateStore != null) {
+            mStateStore.putMeasurement(mItemId, contentWidth, mText, measurement);
+        }
+    }
+
+    /**
+     * 获取文本可用宽度，宽度不确定时返回-1
+     */
+    private int getContentWidth(int widthMeasureSpec) {
+        if (MeasureSpec.getMode(widthMeasureSpec) == MeasureSpec.UNSPECIFIED) {
+            return -1;
+        }
+        int width = MeasureSpec.getSize(widthMeasureSpec) - getPaddingLeft() - getPaddingRight()
+                - mTvContent.getCompoundPaddingLeft() - mTvContent.getCompoundPaddingRight();
+        ViewGroup.LayoutParams params = mTvContent.getLayoutParams();
+        if (params instanceof MarginLayoutParams) {
+            width -= ((MarginLayoutParams) params).leftMargin + ((MarginLayoutParams) params).rightMargin;
+        }
+        return width > 0 ? width : -1;
+    }
+
+    /**
+     * 生成测量缓存的key，宽度不确定时返回null
+     */
+    @Nullable
+    private TextLayoutCache.Key obtainCacheKey(int widthMeasureSpec) {
+        int width = getContentWidth(widthMeasureSpec);
+        if (width <= 0) {
+            return null;
+        }
+        return TextLayoutCache.obtainKey(mText, mTvContent, width, mMaxCollapsedLines, getSuffixWidth());
+    }
+
+    /**
+     * 按最大行数测量后，读取行数和折叠/展开高度
+     *
+     * @param lineCount 文本总行数
+     */
+    private Measurement measureContent(int lineCount) {
+        int fullHeight = mTvContent.getMeasuredHeight();
+        Layout layout = mTvContent.getLayout();
+        if (layout == null) {
+            return new Measurement(lineCount, fullHeight, fullHeight, mText.length());
+        }
+        return CollapseEngine.measureLines(new LayoutLines(layout), mText.length(), fullHeight,
+                mTvContent.getCompoundPaddingTop() + mTvContent.getCompoundPaddingBottom(), mMaxCollapsedLines,
+                layout.getWidth() - getSuffixWidth());
+    }
+
+    public void setText(@Nullable CharSequence text) {
+        if (!ExpandMetrics.isEnabled()) {
+            bindText(text);
             return;
         }
+        long start = ExpandMetrics.beginSection(ExpandMetrics.SECTION_BIND);
+        bindText(text);
+        ExpandMetrics.onBind(this, ExpandMetrics.endSection(start));
+    }
 
-        // 需要折叠
-        if (mCollapsed) {
-            mTvContent.setMaxLines(mMaxCollapsedLines);
+    /**
+     * 在文本末尾追加内容，用于逐段接收的文本
+     * <p>
+     * 已经折叠且超过折叠行数时，显示的内容不变，只保存文本；显示全部文本时，第一次追加后TextView以可编辑文本
+     * 绑定同一个缓冲区，之后追加的内容由DynamicLayout只重新换行最后一个段落，再从已有布局中更新折叠判断。
+     * 展开后分块显示时只重新分块最后一块。还没有测量过或者正在后台测量时，按{@link #setText(CharSequence)}重新测量
+     */
+    public void append(@Nullable CharSequence chunk) {
+        if (TextUtils.isEmpty(chunk)) {
+            return;
         }
-        if (isNeedDrawable) {
-            if (isOnlyExpand && !mCollapsed) {
-                mBtnState.setVisibility(GONE);
+        boolean isMeasured = !isRelayout && !isMeasurePending && mContentWidth > 0
+                && mTvContent.getLayout() != null && getVisibility() == VISIBLE;
+        boolean isFullTextShown = mDisplayEnd == mText.length() && !isInlineShown;
+        boolean isChunksShown = !isRelayout && !isMeasurePending && !mCollapsed && mChunkView != null
+                && mChunkView.getVisibility() == VISIBLE;
+        appendText(chunk);
+        if (isMeasured && mCollapsed && CollapseEngine.needsCollapse(mLineCount, mMaxCollapsedLines)) {
+            // 折叠部分已经确定，追加的内容不会显示
+            return;
+        }
+        if (isChunksShown) {
+            if (mChunkView.getText() == mText) {
+                mChunkView.onTextAppended();
             } else {
-                mBtnState.setVisibility(VISIBLE);
+                mChunkView.setText(mText);
             }
+            return;
         }
-        if (isNeedText) {
-            if (isOnlyExpand && !mCollapsed) {
-                mTvState.setVisibility(GONE);
-            } else {
-                mTvState.setVisibility(VISIBLE);
+        if (isMeasured && isFullTextShown && mAnimatedHeight < 0 && !isVirtualizeText()) {
+            if (mTvContent.getText() != mText) {
+                // 第一次追加时以可编辑文本绑定同一个缓冲区，之后TextView的布局随缓冲区增量更新
+                mTvContent.setText(mText, TextView.BufferType.EDITABLE);
+            }
+            mDisplayEnd = mText.length();
+            Layout layout = mTvContent.getLayout();
+            if (layout != null) {
+                int verticalPadding = mTvContent.getCompoundPaddingTop() + mTvContent.getCompoundPaddingBottom();
+                // 只读取折叠行附近的位置，不遍历全部行
+                applyMeasurement(CollapseEngine.measureLines(new LayoutLines(layout), mText.length(),
+                        layout.getHeight() + verticalPadding, verticalPadding, mMaxCollapsedLines,
+                        mContentWidth - getSuffixWidth()), true);
+                return;
             }
         }
-        super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+        setText(mText);
     }
 
-    public void setText(@Nullable CharSequence text) {
+    /**
+     * 把内容追加到mText，正在后台测量的文本不能修改，需要复制
+     */
+    private void appendText(CharSequence chunk) {
+        if (mText != mAppendText || isMeasurePending) {
+            mAppendText = new SpannableStringBuilder(mText);
+        }
+        mAppendText.append(chunk);
+        mText = mAppendText;
+    }
+
+    private void bindText(@Nullable CharSequence text) {
         isRelayout = true;
-        mTvContent.setText(text);
+        mText = text == null ? "" : text;
+        mDisplayEnd = -1;
+        mBindGeneration++;
+        isMeasurePending = false;
+
+        // 显示的文本在测量时根据折叠状态设置，避免TextView立即对全部文本布局
+        if (mContentWidth > 0) {
+            prepareMeasurement();
+        }
         setVisibility(TextUtils.isEmpty(text) ? View.GONE : View.VISIBLE);
+        if (mWidthBuckets != null) {
+            precomputeWidthBuckets();
+        }
+    }
+
+    /**
+     * 按预计的控件宽度提前完成文本布局和折叠判断
+     * <p>
+     * 在RecyclerView预取时绑定调用，文本布局在空闲时间完成，显示时直接使用测量结果
+     *
+     * @param width 预计的控件宽度
+     */
+    public void prefetch(int width) {
+        if (mContentWidth > 0 || mText.length() == 0) {
+            return;
+        }
+        int contentWidth = getContentWidth(MeasureSpec.makeMeasureSpec(width, MeasureSpec.EXACTLY));
+        if (contentWidth > 0) {
+            mContentWidth = contentWidth;
+            prepareMeasurement();
+        }
+    }
+
+    /**
+     * 按上次测量的宽度准备测量结果：有缓存时直接使用，设置了Executor时在后台测量，
+     * 折叠状态下立即只对折叠部分布局，展开状态留到测量时由TextView布局
+     */
+    private void prepareMeasurement() {
+        TextLayoutCache.Key key = TextLayoutCache.obtainKey(mText, mTvContent, mContentWidth, mMaxCollapsedLines,
+                getSuffixWidth());
+        Measurement measurement = getCachedMeasurement(key, mContentWidth);
+        if (measurement != null) {
+            applyMeasurement(measurement, true);
+        } else if (mMeasureExecutor != null && mText.length() > 0) {
+            measureAsync();
+        } else if (mCollapsed && mText.length() > 0) {
+            applyMeasurement(measureCollapsed(key, mContentWidth), true);
+        }
+    }
+
+    /**
+     * 只对折叠部分布局，测量结果放入缓存
+     */
+    private Measurement measureCollapsed(TextLayoutCache.Key key, int contentWidth) {
+        TextMeasurer measurer = TextMeasurer.obtain(mTvContent, contentWidth, mMaxCollapsedLines, getSuffixWidth());
+        Measurement measurement = measureShortText(measurer);
+        if (measurement != null) {
+            return measurement;
+        }
+        measurement = measurer.measureCollapsed(mText);
+        putMeasurement(key, contentWidth, measurement);
+        return measurement;
+    }
+
+    /**
+     * 按字符数、换行数和字符宽度上限判断文本是否一定不需要折叠，不对文本布局
+     * <p>
+     * 结果不包含高度，不放入缓存，判断本身的耗时与折叠行数内的字符数成正比
+     *
+     * @return 一定不需要折叠时的测量结果，无法判断时返回null
+     */
+    @Nullable
+    private Measurement measureShortText(TextMeasurer measurer) {
+        // 转换后的文本宽度无法确定
+        if (mTvContent.getTransformationMethod() != null) {
+            return null;
+        }
+        Measurement measurement = measurer.measureWithoutLayout(mText);
+        if (ExpandMetrics.isEnabled()) {
+            ExpandMetrics.onShortTextCheck(this, measurement != null);
+        }
+        return measurement;
+    }
+
+    /**
+     * 在后台按上次测量的宽度对文本换行，测量结果放入{@link TextLayoutCache}后在主线程重新布局
+     */
+    private void measureAsync() {
+        final TextMeasurer measurer = TextMeasurer.obtain(mTvContent, mContentWidth, mMaxCollapsedLines,
+                getSuffixWidth());
+        final CharSequence text = mText;
+        final int generation = mBindGeneration;
+        final boolean collapsed = mCollapsed;
+        Measurement shortText = measureShortText(measurer);
+        if (shortText != null) {
+            applyMeasurement(shortText, true);
+            return;
+        }
+        isMeasurePending = true;
+        // 等待测量结果时只显示折叠行数内可能显示的文本
+        setDisplayText(measurer.estimateCollapsedLength(text));
+        mMeasureExecutor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                measurer.measureCached(text, collapsed);
+                post(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        // 列表中控件已经重新绑定了其他内容，丢弃结果
+                        if (generation != mBindGeneration || !isMeasurePending) {
+                            return;
+                        }
+                        isMeasurePending = false;
+                        isRelayout = true;
+                        requestLayout();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * 设置预计会使用的控件宽度，例如竖屏、横屏和分屏时的宽度
+     * <p>
+     * 每次绑定文本时，对每个宽度提前完成折叠判断和高度测量并放入{@link TextLayoutCache}，
+     * 旋转屏幕或改变分屏大小后直接使用缓存的结果，不需要重新换行。
+     * 只在{@link #setMeasureExecutor}设置的Executor中测量，没有设置Executor时不提前测量；
+     * 缓存按宽度数放大，避免同一文本的多个宽度互相淘汰
+     *
+     * @param widths 控件宽度，为null时不提前测量
+     */
+    public void setWidthBuckets(@Nullable int... widths) {
+        mWidthBuckets = widths == null || widths.length == 0 ? null : widths.clone();
+        if (mWidthBuckets != null) {
+            // 当前宽度可能不在预计的宽度中
+            TextLayoutCache.getInstance().ensureWidthCount(mWidthBuckets.length + 1);
+        }
+        if (mWidthBuckets != null && mText.length() > 0) {
+            precomputeWidthBuckets();
+        }
+    }
+
+    /**
+     * 对当前宽度以外没有缓存结果的宽度提交后台测量，测量结果只放入缓存，不影响当前显示
+     */
+    private void precomputeWidthBuckets() {
+        // 追加的文本会在主线程继续修改，不能在其他线程测量
+        if (mMeasureExecutor == null || mText.length() == 0 || mText == mAppendText) {
+            return;
+        }
+        for (int width : mWidthBuckets) {
+            int contentWidth = getContentWidth(MeasureSpec.makeMeasureSpec(width, MeasureSpec.EXACTLY));
+            // 当前宽度由绑定和测量流程处理
+            if (contentWidth <= 0 || contentWidth == mContentWidth) {
+                continue;
+            }
+            final TextMeasurer measurer = TextMeasurer.obtain(mTvContent, contentWidth, mMaxCollapsedLines,
+                    getSuffixWidth());
+            final CharSequence text = mText;
+            final boolean collapsed = mCollapsed;
+            Measurement cached = TextLayoutCache.getInstance().get(measurer.obtainKey(text));
+            if (cached != null && (collapsed || cached.isComplete())) {
+                continue;
+            }
+            mMeasureExecutor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    measurer.measureCached(text, collapsed);
+                }
+            });
+        }
+    }
+
+    /**
+     * 按上次测量的宽度创建测量器，用于在后台提前测量将要设置的文本，还没有测量过宽度时返回null
+     */
+    @Nullable
+    TextMeasurer obtainMeasurer() {
+        if (mContentWidth <= 0) {
+            return null;
+        }
+        return TextMeasurer.obtain(mTvContent, mContentWidth, mMaxCollapsedLines, getSuffixWidth());
+    }
+
+    /**
+     * 设置后台测量使用的Executor，文本换行将在后台执行，主线程只应用测量结果
+     * <p>
+     * 文本在测量过程中不能被修改；为null时在主线程测量
+     */
+    public void setMeasureExecutor(@Nullable Executor executor) {
+        mMeasureExecutor = executor;
     }
 
     // 在列表中使用时，设置文本
     public void setText(@Nullable CharSequence text, @NonNull SparseBooleanArray collapsedStatus, int position) {
         mCollapsedStatus = collapsedStatus;
         mPosition = position;
-        boolean isCollapsed = collapsedStatus.get(position, true);
+        mStateStore = null;
+        setTextInList(text, collapsedStatus.get(position, true));
+    }
+
+    /**
+     * 在列表中使用时，设置文本，按稳定的item id保存展开/折叠状态和测量结果
+     *
+     * @param text       文本内容
+     * @param stateStore 保存状态的store，同一个store只能用于相同设置的控件
+     * @param id         item id
+     */
+    public void setText(@Nullable CharSequence text, @NonNull ExpandStateStore stateStore, long id) {
+        mStateStore = stateStore;
+        mItemId = id;
+        mCollapsedStatus = null;
+        setTextInList(text, stateStore.isCollapsed(id));
+    }
+
+    private void setTextInList(@Nullable CharSequence text, boolean isCollapsed) {
         clearAnimation();
+        cancelAnimation();
         mCollapsed = isCollapsed;
-        if (isNeedDrawable) {
-            mBtnState.setImageDrawable(mCollapsed ? mExpandDrawable : mCollapseDrawable);
-        }
-        if (isNeedText) {
-            mTvState.setText(mCollapsed ? mExpandText : mCollapseText);
-        }
+        updateStateContent();
         setText(text);
         getLayoutParams().height = ViewGroup.LayoutParams.WRAP_CONTENT;
         requestLayout();
     }
 
     public CharSequence getText() {
-        if (mTvContent == null) {
-            return "";
-        }
-        return mTvContent.getText();
+        return mText;
     }
 
     private void init(AttributeSet attrs) {
-        TypedArray typedArray = getContext().obtainStyledAttributes(attrs, R.styleable.ExpandableTextView);
-        mMaxCollapsedLines = typedArray.getInt(R.styleable.ExpandableTextView_max_collapsed_lines, MAX_COLLAPSED_LINES);
-        mExpandDrawable = typedArray.getDrawable(R.styleable.ExpandableTextView_expand_drawable);
-        mCollapseDrawable = typedArray.getDrawable(R.styleable.ExpandableTextView_collapse_drawable);
-        isNeedDrawable = typedArray.getBoolean(R.styleable.ExpandableTextView_need_drawable, true);
-        isNeedText = typedArray.getBoolean(R.styleable.ExpandableTextView_need_text, false);
-        mExpandText = typedArray.getString(R.styleable.ExpandableTextView_expand_text);
-        mCollapseText = typedArray.getString(R.styleable.ExpandableTextView_collapse_text);
-        isOnlyExpand = typedArray.getBoolean(R.styleable.ExpandableTextView_only_expand, false);
+        Style style = STYLE_CACHE.obtain(getContext(), attrs, STYLE_RESOLVER);
+        mMaxCollapsedLines = style.maxCollapsedLines;
+        isNeedDrawable = style.isNeedDrawable;
+        isNeedText = style.isNeedText;
+        mExpandText = style.expandText;
+        mCollapseText = style.collapseText;
+        isOnlyExpand = style.isOnlyExpand;
+        isInlineExpand = style.isInlineExpand;
+        mAnimationDuration = style.animationDuration;
+        mVirtualizeLength = style.virtualizeLength;
+        mExpandDrawable = StyleCache.newDrawable(getContext(), style.expandDrawable, style.expandDrawableId);
+        mCollapseDrawable = StyleCache.newDrawable(getContext(), style.collapseDrawable, style.collapseDrawableId);
 
-        if (isNeedDrawable) {
-            if (mExpandDrawable == null) {
-                mExpandDrawable = ContextCompat.getDrawable(getContext(), R.drawable.ic_expand_more_black_12dp);
-            }
-            if (mCollapseDrawable == null) {
-                mCollapseDrawable = ContextCompat.getDrawable(getContext(), R.drawable.ic_expand_less_black_12dp);
-            }
-        }
-        if (isNeedText) {
-            if (mExpandText == null) {
-                mExpandText = "展开";
+        setOrientation(LinearLayout.VERTICAL);
+        setVisibility(GONE);
+    }
+
+    /**
+     * 清除共享的样式，下次创建控件时重新解析
+     */
+    static void clearStyleCache() {
+        STYLE_CACHE.clear();
+    }
+
+    /**
+     * 解析后的样式，图片只保存ConstantState，每个控件创建自己的图片
+     */
+    private static final class Style {
+        final int maxCollapsedLines;
+        final boolean isNeedDrawable;
+        final boolean isNeedText;
+        final CharSequence expandText;
+        final CharSequence collapseText;
+        final boolean isOnlyExpand;
+        final boolean isInlineExpand;
+        final int animationDuration;
+        final int virtualizeLength;
+        final Drawable.ConstantState expandDrawable;
+        final int expandDrawableId;
+        final Drawable.ConstantState collapseDrawable;
+        final int collapseDrawableId;
+
+        Style(Context context, AttributeSet attrs) {
+            TypedArray typedArray = context.obtainStyledAttributes(attrs, R.styleable.ExpandableTextView);
+            maxCollapsedLines = typedArray.getInt(R.styleable.ExpandableTextView_max_collapsed_lines, MAX_COLLAPSED_LINES);
+            Drawable expand = typedArray.getDrawable(R.styleable.ExpandableTextView_expand_drawable);
+            int expandId = typedArray.getResourceId(R.styleable.ExpandableTextView_expand_drawable, 0);
+            Drawable collapse = typedArray.getDrawable(R.styleable.ExpandableTextView_collapse_drawable);
+            int collapseId = typedArray.getResourceId(R.styleable.ExpandableTextView_collapse_drawable, 0);
+            isNeedDrawable = typedArray.getBoolean(R.styleable.ExpandableTextView_need_drawable, true);
+            isNeedText = typedArray.getBoolean(R.styleable.ExpandableTextView_need_text, false);
+            String expandText = typedArray.getString(R.styleable.ExpandableTextView_expand_text);
+            String collapseText = typedArray.getString(R.styleable.ExpandableTextView_collapse_text);
+            isOnlyExpand = typedArray.getBoolean(R.styleable.ExpandableTextView_only_expand, false);
+            isInlineExpand = typedArray.getBoolean(R.styleable.ExpandableTextView_inline_expand, false);
+            animationDuration = typedArray.getInt(R.styleable.ExpandableTextView_animation_duration,
+                    DEFAULT_ANIMATION_DURATION);
+            virtualizeLength = typedArray.getInt(R.styleable.ExpandableTextView_virtualize_length, 0);
+            typedArray.recycle();
+
+            if (isNeedDrawable) {
+                if (expand == null) {
+                    expandId = R.drawable.ic_expand_more_black_12dp;
+                    expand = ContextCompat.getDrawable(context, expandId);
+                }
+                if (collapse == null) {
+                    collapseId = R.drawable.ic_expand_less_black_12dp;
+                    collapse = ContextCompat.getDrawable(context, collapseId);
+                }
             }
-            if (mCollapseText == null) {
-                mCollapseText = "收起";
+            if (isNeedText || isInlineExpand) {
+                if (expandText == null) {
+                    expandText = "展开";
+                }
+                if (collapseText == null) {
+                    collapseText = "收起";
+                }
             }
+            this.expandText = expandText;
+            this.collapseText = collapseText;
+            expandDrawable = StyleCache.getConstantState(expand);
+            expandDrawableId = expandId;
+            collapseDrawable = StyleCache.getConstantState(collapse);
+            collapseDrawableId = collapseId;
         }
-        typedArray.recycle();
-
-        setOrientation(LinearLayout.VERTICAL);
-        setVisibility(GONE);
     }
 
     private void findViews() {
         mTvContent = (TextView) findViewById(R.id.tv_expandable_text);
+        // 以可编辑文本显示mAppendText时直接使用，不复制
+        mTvContent.setEditableFactory(new Editable.Factory() {
+
+            @Override
+            public Editable newEditable(CharSequence source) {
+                return source == mAppendText ? mAppendText : super.newEditable(source);
+            }
+        });
+        if (isInlineExpand) {
+            mTvContent.setMovementMethod(LinkMovementMethod.getInstance());
+        }
+        // 布局中的展开/折叠按钮和文本可以是ViewStub，只有文本需要折叠时才创建
         if (isNeedDrawable) {
-            mBtnState = (ImageButton) findViewById(R.id.expand_collapse);
-            mBtnState.setImageDrawable(mCollapsed ? mExpandDrawable : mCollapseDrawable);
-            mBtnState.setOnClickListener(this);
+            View btnState = findViewById(R.id.expand_collapse);
+            if (btnState instanceof ViewStub) {
+                mBtnStateStub = (ViewStub) btnState;
+            } else {
+                setBtnState((ImageButton) btnState);
+            }
         }
         if (isNeedText) {
-            mTvState = (TextView) findViewById(R.id.tv_expand_collapse);
-            mTvState.setText(mCollapsed ? mExpandText : mCollapseText);
-            mTvState.setOnClickListener(this);
+            View tvState = findViewById(R.id.tv_expand_collapse);
+            // 末行内嵌的展开文本使用展开/折叠文本的颜色，需要立即创建
+            if (tvState instanceof ViewStub && !isInlineExpand) {
+                mTvStateStub = (ViewStub) tvState;
+            } else if (tvState instanceof ViewStub) {
+                setTvState((TextView) ((ViewStub) tvState).inflate());
+            } else {
+                setTvState((TextView) tvState);
+            }
         }
     }
 }
\ No newline at end of file
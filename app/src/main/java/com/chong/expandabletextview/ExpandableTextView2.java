@@ -1,25 +1,33 @@
 package com.chong.expandabletextview;
 
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
+import android.animation.ValueAnimator;
 import android.content.Context;
 import android.content.res.TypedArray;
 import android.graphics.drawable.Drawable;
-import android.os.Handler;
-import android.os.Message;
+import android.support.annotation.NonNull;
 import android.support.v4.content.ContextCompat;
+import android.text.Layout;
 import android.text.TextUtils;
 import android.util.AttributeSet;
-import android.view.LayoutInflater;
+import android.util.SparseBooleanArray;
+import android.util.TypedValue;
+import android.view.Display;
 import android.view.View;
 import android.view.View.OnClickListener;
 import android.view.ViewTreeObserver;
+import android.view.ViewGroup;
 import android.view.ViewTreeObserver.OnPreDrawListener;
+import android.view.WindowManager;
+import android.view.animation.AccelerateDecelerateInterpolator;
 import android.widget.ImageView;
 import android.widget.LinearLayout;
 import android.widget.RelativeLayout;
 import android.widget.TextView;
 
-import java.lang.ref.WeakReference;
-
+import com.chong.expandabletextview.core.CollapseEngine;
+import com.chong.expandabletextview.core.Measurement;
 
 /**
  * 按行数进行折叠带过渡动画的TextView
@@ -42,10 +50,15 @@ public class ExpandableTextView2 extends LinearLayout implements OnClickListener
     private ImageView ivExpandOrShrink;
 
     /**
-     * 底部是否折叠/收起的父类布局
+     * 底部是否折叠/收起的父类布局，文本需要折叠时才创建
      */
     private RelativeLayout rlToggleLayout;
 
+    /**
+     * 全部/收起文本的字体大小，单位px
+     */
+    private float textStateSize;
+
     /**
      * 提示折叠的图片资源
      */
@@ -94,7 +107,22 @@ public class ExpandableTextView2 extends LinearLayout implements OnClickListener
     private int textLines;
 
     /**
-     * 显示的文本
+     * 在列表中，按位置保存折叠状态
+     */
+    private SparseBooleanArray collapsedStatus;
+
+    /**
+     * 列表中位置
+     */
+    private int position;
+
+    /**
+     * TextView是否只显示了折叠行数内的文本
+     */
+    private boolean isTextTruncated;
+
+    /**
+     * 显示的文本，保存调用者传入的对象，不复制也不转换为String
      */
     private CharSequence textContent;
 
@@ -109,14 +137,20 @@ public class ExpandableTextView2 extends LinearLayout implements OnClickListener
     private float textContentSize;
 
     /**
-     * 动画过度间隔
+     * 每行的动画过渡时间，动画总时长不超过animationDuration
      */
     private int sleepTime = 30;
 
     /**
-     * handler信号
+     * 动画最大时长
+     */
+    private int animationDuration = DEFAULT_ANIMATION_DURATION;
+
+    /**
+     * 默认动画最大时长
      */
-    private static final int WHAT = 2;
+    private static final int DEFAULT_ANIMATION_DURATION = 300;
+
     /**
      * 动画结束信号
      */
@@ -127,187 +161,479 @@ public class ExpandableTextView2 extends LinearLayout implements OnClickListener
      */
     private static final int WHAT_EXPAND_ONLY = 4;
 
-    private MyHandler handler;
+    /**
+     * 同一主题下属性相同的控件共享的样式
+     */
+    private static final StyleCache<Style> STYLE_CACHE = new StyleCache<>();
 
-    public ExpandableTextView2(Context context, AttributeSet attrs) {
-        super(context, attrs);
-        initValue(context, attrs);
-        initView(context);
-        initClick();
-    }
+    private static final StyleCache.Resolver<Style> STYLE_RESOLVER = new StyleCache.Resolver<Style>() {
 
-    private void initValue(Context context, AttributeSet attrs) {
-        TypedArray ta = context.obtainStyledAttributes(attrs,
-                R.styleable.ExpandableTextView2);
+        @Override
+        public Style resolve(Context context, AttributeSet attrs) {
+            return new Style(context, attrs);
+        }
+    };
 
-        expandLines = ta.getInteger(
-                R.styleable.ExpandableTextView2_tv_expandLines, 5);
+    /**
+     * 展开/折叠动画，每个控件只有一个，跟随屏幕刷新帧执行
+     */
+    private ValueAnimator animator;
 
-        drawableShrink = ta
-                .getDrawable(R.styleable.ExpandableTextView2_tv_shrinkBitmap);
-        drawableExpand = ta
-                .getDrawable(R.styleable.ExpandableTextView2_tv_expandBitmap);
+    /**
+     * 当前动画的起点行数
+     */
+    private int animStartLines;
 
-        textViewStateColor = ta.getColor(R.styleable.ExpandableTextView2_tv_textStateColor,
-                ContextCompat.getColor(context, R.color.colorPrimary));
+    /**
+     * 当前动画的终点行数
+     */
+    private int animEndLines;
 
-        textShrink = ta.getString(R.styleable.ExpandableTextView2_tv_textShrink);
-        textExpand = ta.getString(R.styleable.ExpandableTextView2_tv_textExpand);
+    /**
+     * 当前动画结束后的信号
+     */
+    private int animEndWhat;
 
-        if (null == drawableShrink) {
-            drawableShrink = ContextCompat.getDrawable(context, R.drawable.icon_green_arrow_up);
-        }
+    /**
+     * 当前动画是否被取消
+     */
+    private boolean isAnimCanceled;
 
-        if (null == drawableExpand) {
-            drawableExpand = ContextCompat.getDrawable(context, R.drawable.icon_green_arrow_down);
-        }
+    /**
+     * 开启统计时，当前动画的开始时间，未统计时为0
+     */
+    private long animStartNanos;
 
-        if (TextUtils.isEmpty(textShrink)) {
-            textShrink = context.getString(R.string.shrink);
-        }
+    /**
+     * 开启统计时，当前动画执行的帧数
+     */
+    private int animFrames;
 
-        if (TextUtils.isEmpty(textExpand)) {
-            textExpand = context.getString(R.string.expand);
-        }
+    /**
+     * 开启统计时，是否正在统计本次展开/折叠的布局次数
+     */
+    private boolean isToggleCounting;
 
+    /**
+     * 开启统计时，本次展开/折叠的布局次数
+     */
+    private int toggleRelayouts;
 
-        textContentColor = ta.getColor(R.styleable.ExpandableTextView2_tv_textContentColor, ContextCompat.getColor(context, R.color.color_gray_light_content_text));
-        textContentSize = ta.getDimension(R.styleable.ExpandableTextView2_tv_textContentSize, 14);
+    public ExpandableTextView2(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        Style style = STYLE_CACHE.obtain(context, attrs, STYLE_RESOLVER);
+        initValue(context, style);
+        initView(context, style);
+        initClick();
+    }
+
+    private void initValue(Context context, Style style) {
+        expandLines = style.expandLines;
+        drawableShrink = StyleCache.newDrawable(context, style.drawableShrink, style.drawableShrinkId);
+        drawableExpand = StyleCache.newDrawable(context, style.drawableExpand, style.drawableExpandId);
+        textViewStateColor = style.textViewStateColor;
+        textShrink = style.textShrink;
+        textExpand = style.textExpand;
+        textContentColor = style.textContentColor;
+        textContentSize = style.attrTextContentSize;
+    }
 
-        ta.recycle();
+    /**
+     * 清除共享的样式，下次创建控件时重新解析
+     */
+    static void clearStyleCache() {
+        STYLE_CACHE.clear();
     }
 
-    private void initView(Context context) {
+    /**
+     * 解析后的样式，图片只保存ConstantState，每个控件创建自己的图片
+     */
+    private static final class Style {
+        final int expandLines;
+        final Drawable.ConstantState drawableShrink;
+        final int drawableShrinkId;
+        final Drawable.ConstantState drawableExpand;
+        final int drawableExpandId;
+        final int textViewStateColor;
+        final String textShrink;
+        final String textExpand;
+        final int textContentColor;
+        /**
+         * tv_textContentSize属性指定的文本字体大小，绘制内容文本时使用
+         */
+        final float attrTextContentSize;
+        /**
+         * R.dimen.sp_txt_size_content的字体大小，用于TextView的默认字体大小和展开/收起文本
+         */
+        final float dimenTextSizeContent;
+
+        Style(Context context, AttributeSet attrs) {
+            TypedArray ta = context.obtainStyledAttributes(attrs,
+                    R.styleable.ExpandableTextView2);
+
+            expandLines = ta.getInteger(
+                    R.styleable.ExpandableTextView2_tv_expandLines, 5);
+
+            Drawable shrink = ta
+                    .getDrawable(R.styleable.ExpandableTextView2_tv_shrinkBitmap);
+            int shrinkId = ta.getResourceId(R.styleable.ExpandableTextView2_tv_shrinkBitmap, 0);
+            Drawable expand = ta
+                    .getDrawable(R.styleable.ExpandableTextView2_tv_expandBitmap);
+            int expandId = ta.getResourceId(R.styleable.ExpandableTextView2_tv_expandBitmap, 0);
+
+            textViewStateColor = ta.getColor(R.styleable.ExpandableTextView2_tv_textStateColor,
+                    ContextCompat.getColor(context, R.color.colorPrimary));
+
+            String shrinkText = ta.getString(R.styleable.ExpandableTextView2_tv_textShrink);
+            String expandText = ta.getString(R.styleable.ExpandableTextView2_tv_textExpand);
+
+            if (null == shrink) {
+                shrinkId = R.drawable.icon_green_arrow_up;
+                shrink = ContextCompat.getDrawable(context, shrinkId);
+            }
 
-        LayoutInflater inflater = (LayoutInflater) context
-                .getSystemService(Context.LAYOUT_INFLATER_SERVICE);
-        inflater.inflate(R.layout.layout_expandable_textview, this);
+            if (null == expand) {
+                expandId = R.drawable.icon_green_arrow_down;
+                expand = ContextCompat.getDrawable(context, expandId);
+            }
 
-        rlToggleLayout = (RelativeLayout) findViewById(R.id.rl_expandable);
+            if (TextUtils.isEmpty(shrinkText)) {
+                shrinkText = context.getString(R.string.shrink);
+            }
+
+            if (TextUtils.isEmpty(expandText)) {
+                expandText = context.getString(R.string.expand);
+            }
+
+            textContentColor = ta.getColor(R.styleable.ExpandableTextView2_tv_textContentColor, ContextCompat.getColor(context, R.color.color_gray_light_content_text));
+            attrTextContentSize = ta.getDimension(R.styleable.ExpandableTextView2_tv_textContentSize, 14);
+            dimenTextSizeContent = context.getResources().getDimension(R.dimen.sp_txt_size_content);
+
+            ta.recycle();
+
+            drawableShrink = StyleCache.getConstantState(shrink);
+            drawableShrinkId = shrinkId;
+            drawableExpand = StyleCache.getConstantState(expand);
+            drawableExpandId = expandId;
+            textShrink = shrinkText;
+            textExpand = expandText;
+        }
+    }
+
+    /**
+     * 直接创建子View，不从布局文件加载
+     */
+    private void initView(Context context, Style style) {
+        setOrientation(VERTICAL);
 
-        textView = (TextView) findViewById(R.id.tv_expandable);
+        textView = onCreateTextView(context);
+        textView.setId(R.id.tv_expandable);
+        textView.setTextSize(TypedValue.COMPLEX_UNIT_PX, style.dimenTextSizeContent);
         textView.setTextColor(textContentColor);
         textView.getPaint().setTextSize(textContentSize);
+        addView(textView, new LinearLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT,
+                ViewGroup.LayoutParams.WRAP_CONTENT));
+        textStateSize = style.dimenTextSizeContent;
+    }
 
-        ivExpandOrShrink = (ImageView) findViewById(R.id.iv_expandable);
+    /**
+     * 创建显示文本的TextView，在构造方法中调用，子类可以替换为自己的TextView
+     */
+    protected TextView onCreateTextView(Context context) {
+        return new TextView(context);
+    }
 
-        tvState = (TextView) findViewById(R.id.tv_expandable_hint);
+    /**
+     * 获取底部的折叠/收起布局，第一次需要显示时才创建，不需要折叠的文本只有一个TextView
+     */
+    private RelativeLayout obtainToggleLayout() {
+        if (rlToggleLayout != null) {
+            return rlToggleLayout;
+        }
+        Context context = getContext();
+        rlToggleLayout = new RelativeLayout(context);
+        rlToggleLayout.setId(R.id.rl_expandable);
+        addView(rlToggleLayout, new LinearLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT,
+                ViewGroup.LayoutParams.WRAP_CONTENT));
+
+        ivExpandOrShrink = new ImageView(context);
+        ivExpandOrShrink.setId(R.id.iv_expandable);
+        RelativeLayout.LayoutParams imageParams = new RelativeLayout.LayoutParams(
+                ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT);
+        imageParams.addRule(RelativeLayout.ALIGN_PARENT_RIGHT);
+        imageParams.addRule(RelativeLayout.CENTER_VERTICAL);
+        rlToggleLayout.addView(ivExpandOrShrink, imageParams);
+
+        tvState = new TextView(context);
+        tvState.setId(R.id.tv_expandable_hint);
+        tvState.setTextSize(TypedValue.COMPLEX_UNIT_PX, textStateSize);
         tvState.setTextColor(textViewStateColor);
-
-        handler = new MyHandler(this, textView);
+        RelativeLayout.LayoutParams stateParams = new RelativeLayout.LayoutParams(
+                ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT);
+        stateParams.addRule(RelativeLayout.CENTER_VERTICAL);
+        stateParams.addRule(RelativeLayout.LEFT_OF, R.id.iv_expandable);
+        rlToggleLayout.addView(tvState, stateParams);
+        rlToggleLayout.setOnClickListener(this);
+        return rlToggleLayout;
     }
 
     private void initClick() {
         textView.setOnClickListener(this);
-        rlToggleLayout.setOnClickListener(this);
     }
 
+    /**
+     * 设置文本，保留文本中的span
+     * <p>
+     * 展开时String和SpannedString由TextView直接使用，不复制；可变的Spannable（如SpannableStringBuilder）
+     * 由TextView复制一份SpannedString，传入的对象仍归调用方所有。
+     * 折叠时TextView只显示折叠行数内的部分，只复制这一部分，展开时再显示全部文本
+     *
+     * @param charSequence 显示的文本
+     */
     public void setText(CharSequence charSequence) {
+        if (!ExpandMetrics.isEnabled()) {
+            bindText(charSequence);
+            return;
+        }
+        long start = ExpandMetrics.beginSection(ExpandMetrics.SECTION_BIND);
+        bindText(charSequence);
+        ExpandMetrics.onBind(this, ExpandMetrics.endSection(start));
+    }
 
-        textContent = charSequence;
-
-        textView.setText(charSequence.toString());
+    private void bindText(CharSequence charSequence) {
+        cancelAnimation();
 
-        ViewTreeObserver viewTreeObserver = textView.getViewTreeObserver();
-        viewTreeObserver.addOnPreDrawListener(new OnPreDrawListener() {
-
-            @Override
-            public boolean onPreDraw() {
-                if (!isInitTextView) {
-                    return true;
-                }
-                textLines = textView.getLineCount();
-                isExpandNeeded = textLines > expandLines;
-                isInitTextView = false;
-                if (isExpandNeeded) {
-                    isShrink = true;
-                    textView.setMaxLines(expandLines);
-                    setExpandState(expandLines);
-                } else {
-                    isShrink = false;
-                    doNotExpand();
-                }
-                return true;
+        textContent = charSequence;
+        isTextTruncated = false;
+        boolean collapsed = collapsedStatus == null || collapsedStatus.get(position, true);
+
+        CharSequence displayText = charSequence;
+        int width = textView.getWidth() - textView.getCompoundPaddingLeft() - textView.getCompoundPaddingRight();
+        if (collapsed && width > 0) {
+            Measurement measurement = TextMeasurer.obtain(textView, width, expandLines)
+                    .measureCached(charSequence, true);
+            if (!measurement.isComplete()) {
+                // 折叠时只对折叠行数内的文本布局，展开时再设置全部文本
+                isTextTruncated = true;
+                textLines = measurement.lineCount;
+                displayText = charSequence.subSequence(0, measurement.collapsedEnd);
             }
-        });
+        }
+        textView.setText(displayText);
 
+        // 每次设置文本只测量一次，测量后移除监听
+        isInitTextView = true;
+        isShrink = collapsed;
+        ViewTreeObserver viewTreeObserver = textView.getViewTreeObserver();
+        viewTreeObserver.removeOnPreDrawListener(preDrawListener);
+        viewTreeObserver.addOnPreDrawListener(preDrawListener);
     }
 
-    private static class MyHandler extends Handler {
-        WeakReference<ExpandableTextView2> mViewWeakReference;
-        WeakReference<TextView> mTextViewWeakReference;
+    /**
+     * 在列表中使用时，设置文本并恢复该位置的展开/折叠状态
+     *
+     * @param charSequence    显示的文本
+     * @param collapsedStatus 按位置保存的折叠状态
+     * @param position        列表中的位置
+     */
+    public void setText(CharSequence charSequence, @NonNull SparseBooleanArray collapsedStatus, int position) {
+        this.collapsedStatus = collapsedStatus;
+        this.position = position;
+        setText(charSequence);
+    }
 
-        public MyHandler(ExpandableTextView2 view, TextView textView) {
-            mViewWeakReference = new WeakReference<>(view);
-            mTextViewWeakReference = new WeakReference<>(textView);
-        }
+    /**
+     * 设置文本后，在绘制前根据文本行数确定是否需要折叠
+     */
+    private final OnPreDrawListener preDrawListener = new OnPreDrawListener() {
 
         @Override
-        public void handleMessage(Message msg) {
-            ExpandableTextView2 view = mViewWeakReference.get();
-            TextView textView = mTextViewWeakReference.get();
-            if (view != null && textView != null) {
-                if (WHAT == msg.what) {
-                    textView.setMaxLines(msg.arg1);
-                } else if (WHAT_ANIMATION_END == msg.what) {
-                    view.setExpandState(msg.arg1);
-                } else if (WHAT_EXPAND_ONLY == msg.what) {
-                    view.changeExpandState(msg.arg1);
-                }
+        public boolean onPreDraw() {
+            textView.getViewTreeObserver().removeOnPreDrawListener(this);
+            if (!isInitTextView) {
+                return true;
+            }
+            if (!isTextTruncated) {
+                textLines = textView.getLineCount();
+            }
+            isExpandNeeded = CollapseEngine.needsCollapse(textLines, expandLines);
+            isInitTextView = false;
+            if (isExpandNeeded && isShrink) {
+                textView.setMaxLines(expandLines);
+                setExpandState(expandLines);
+            } else if (isExpandNeeded) {
+                // 列表中恢复展开状态
+                textView.setMaxLines(textLines);
+                changeExpandState(textLines);
+            } else {
+                isShrink = false;
+                doNotExpand();
             }
+            // 已经修改了显示行数，取消本次绘制，按新的布局绘制
+            return false;
         }
-    }
+    };
 
     /**
      * @param startIndex 开始动画的起点行数
      * @param endIndex   结束动画的终点行数
-     * @param what       动画结束后的handler信号标示
+     * @param what       动画结束后的信号标示
+     */
+    private void doAnimation(int startIndex, int endIndex, int what) {
+        // 正在执行的动画从当前高度开始，保证同一时间只有一个动画
+        int startHeight = isAnimating() ? textView.getHeight() : getTextHeight(startIndex);
+        cancelAnimation();
+
+        animStartLines = startIndex;
+        animEndLines = endIndex;
+        animEndWhat = what;
+
+        Layout layout = textView.getLayout();
+        if (layout == null || startIndex == endIndex) {
+            onAnimationFinished();
+            return;
+        }
+
+        int endHeight = getTextHeight(endIndex);
+        textView.setMaxLines(Integer.MAX_VALUE);
+        ensureAnimator();
+        animator.setIntValues(startHeight, endHeight);
+        animator.setDuration(Math.min(animationDuration, sleepTime * Math.abs(endIndex - startIndex)));
+        animator.start();
+    }
+
+    /**
+     * 创建复用的动画，动画按帧改变TextView高度，而不是按行改变最大行数
      */
-    private void doAnimation(final int startIndex, final int endIndex, final int what) {
+    private void ensureAnimator() {
+        if (animator != null) {
+            return;
+        }
+        animator = new ValueAnimator();
+        animator.setInterpolator(new AccelerateDecelerateInterpolator());
+        animator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
 
-        // 动画线程
-        new Thread(new Runnable() {
+            @Override
+            public void onAnimationUpdate(ValueAnimator animation) {
+                boolean isMetricsEnabled = ExpandMetrics.isEnabled();
+                long start = isMetricsEnabled ? ExpandMetrics.beginSection(ExpandMetrics.SECTION_ANIMATION_FRAME) : 0;
+                ViewGroup.LayoutParams params = textView.getLayoutParams();
+                params.height = (Integer) animation.getAnimatedValue();
+                textView.setLayoutParams(params);
+                if (isMetricsEnabled) {
+                    ExpandMetrics.endSection(start);
+                    animFrames++;
+                }
+            }
+        });
+        animator.addListener(new AnimatorListenerAdapter() {
 
             @Override
-            public void run() {
-
-                if (startIndex < endIndex) {
-                    // 如果起止行数小于结束行数，那么往下一行一行展开至结束行数
-                    int count = startIndex;
-                    while (count++ < endIndex) {
-                        Message msg = handler.obtainMessage(WHAT, count, 0);
-
-                        try {
-                            Thread.sleep(sleepTime);
-                        } catch (InterruptedException e) {
-                            e.printStackTrace();
-                        }
-
-                        handler.sendMessage(msg);
-                    }
-                } else if (startIndex > endIndex) {
-                    // 如果起止行数大于结束行数，那么往上一行一行折叠至结束行数
-                    int count = startIndex;
-                    while (count-- > endIndex) {
-                        Message msg = handler.obtainMessage(WHAT, count, 0);
-                        try {
-                            Thread.sleep(sleepTime);
-                        } catch (InterruptedException e) {
-                            e.printStackTrace();
-                        }
-
-                        handler.sendMessage(msg);
-                    }
+            public void onAnimationStart(Animator animation) {
+                isAnimCanceled = false;
+                if (ExpandMetrics.isEnabled()) {
+                    animStartNanos = System.nanoTime();
+                    animFrames = 0;
                 }
+            }
 
-                // 动画结束后发送结束的信号
-                Message msg = handler.obtainMessage(what, endIndex, 0);
-                handler.sendMessage(msg);
+            @Override
+            public void onAnimationCancel(Animator animation) {
+                isAnimCanceled = true;
+            }
 
+            @Override
+            public void onAnimationEnd(Animator animation) {
+                reportAnimation();
+                if (!isAnimCanceled) {
+                    onAnimationFinished();
+                }
             }
+        });
+    }
+
+    /**
+     * 开启统计时，报告动画的时长、帧数和按屏幕刷新率计算丢失的帧数
+     */
+    private void reportAnimation() {
+        if (animStartNanos == 0) {
+            return;
+        }
+        long duration = System.nanoTime() - animStartNanos;
+        animStartNanos = 0;
+        Display display = ((WindowManager) getContext().getSystemService(Context.WINDOW_SERVICE)).getDefaultDisplay();
+        float refreshRate = display.getRefreshRate() > 0 ? display.getRefreshRate() : 60.0f;
+        int expectedFrames = (int) (duration * refreshRate / 1000000000L);
+        ExpandMetrics.onAnimation(this, duration, animFrames, Math.max(0, expectedFrames - animFrames));
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        super.onLayout(changed, l, t, r, b);
+        if (!isToggleCounting) {
+            return;
+        }
+        toggleRelayouts++;
+        // 动画结束后恢复自适应高度的布局完成，才算完成本次展开/折叠
+        if (!isAnimating()) {
+            isToggleCounting = false;
+            ExpandMetrics.onToggle(this, toggleRelayouts);
+        }
+    }
 
-        }).start();
+    /**
+     * 动画结束，恢复自适应高度并设置最终状态
+     */
+    private void onAnimationFinished() {
+        ViewGroup.LayoutParams params = textView.getLayoutParams();
+        params.height = ViewGroup.LayoutParams.WRAP_CONTENT;
+        textView.setLayoutParams(params);
+        textView.setMaxLines(animEndLines);
+        if (WHAT_ANIMATION_END == animEndWhat) {
+            setExpandState(animEndLines);
+        } else if (WHAT_EXPAND_ONLY == animEndWhat) {
+            changeExpandState(animEndLines);
+        }
+    }
 
+    /**
+     * 动画执行中反向执行，从当前位置返回起点
+     */
+    private void reverseAnimation() {
+        int lines = animStartLines;
+        animStartLines = animEndLines;
+        animEndLines = lines;
+        animator.reverse();
+    }
+
+    /**
+     * 取消正在执行的动画，不设置最终状态
+     */
+    private void cancelAnimation() {
+        if (isAnimating()) {
+            animator.cancel();
+            ViewGroup.LayoutParams params = textView.getLayoutParams();
+            params.height = ViewGroup.LayoutParams.WRAP_CONTENT;
+            textView.setLayoutParams(params);
+        }
+    }
+
+    private boolean isAnimating() {
+        return animator != null && animator.isRunning();
+    }
+
+    /**
+     * 获取显示指定行数时TextView的高度
+     *
+     * @param lines 显示行数
+     */
+    private int getTextHeight(int lines) {
+        Layout layout = textView.getLayout();
+        if (layout == null) {
+            return textView.getHeight();
+        }
+        int line = Math.max(0, Math.min(lines, layout.getLineCount()));
+        return layout.getLineTop(line) + textView.getCompoundPaddingTop() + textView.getCompoundPaddingBottom();
     }
 
     /**
@@ -317,8 +643,8 @@ public class ExpandableTextView2 extends LinearLayout implements OnClickListener
      */
     @SuppressWarnings("deprecation")
     private void changeExpandState(int endIndex) {
-        rlToggleLayout.setVisibility(View.VISIBLE);
-        if (endIndex < textLines) {
+        obtainToggleLayout().setVisibility(View.VISIBLE);
+        if (CollapseEngine.needsCollapse(textLines, endIndex)) {
             ivExpandOrShrink.setBackgroundDrawable(drawableExpand);
             tvState.setText(textExpand);
         } else {
@@ -336,28 +662,46 @@ public class ExpandableTextView2 extends LinearLayout implements OnClickListener
     @SuppressWarnings("deprecation")
     private void setExpandState(int endIndex) {
 
-        if (endIndex < textLines) {
+        if (CollapseEngine.needsCollapse(textLines, endIndex)) {
             isShrink = true;
-            rlToggleLayout.setVisibility(View.VISIBLE);
+            obtainToggleLayout().setVisibility(View.VISIBLE);
             ivExpandOrShrink.setBackgroundDrawable(drawableExpand);
             textView.setOnClickListener(this);
             tvState.setText(textExpand);
         } else {
             isShrink = false;
-            rlToggleLayout.setVisibility(View.GONE);
-            ivExpandOrShrink.setBackgroundDrawable(drawableShrink);
             textView.setOnClickListener(null);
-            tvState.setText(textShrink);
+            if (rlToggleLayout != null) {
+                rlToggleLayout.setVisibility(View.GONE);
+                ivExpandOrShrink.setBackgroundDrawable(drawableShrink);
+                tvState.setText(textShrink);
+            }
         }
 
     }
 
+    /**
+     * 折叠时只显示了部分文本，展开前设置全部文本并更新文本行数
+     */
+    private void showFullText() {
+        if (!isTextTruncated) {
+            return;
+        }
+        isTextTruncated = false;
+        textView.setText(textContent);
+        if (textView.getLayout() != null) {
+            textLines = textView.getLayout().getLineCount();
+        }
+    }
+
     /**
      * 无需折叠
      */
     private void doNotExpand() {
         textView.setMaxLines(expandLines);
-        rlToggleLayout.setVisibility(View.GONE);
+        if (rlToggleLayout != null) {
+            rlToggleLayout.setVisibility(View.GONE);
+        }
         textView.setOnClickListener(null);
     }
 
@@ -370,8 +714,16 @@ public class ExpandableTextView2 extends LinearLayout implements OnClickListener
     }
 
     private void clickImageToggle() {
-        if (isShrink) {
+        if (ExpandMetrics.isEnabled() && !isToggleCounting) {
+            isToggleCounting = true;
+            toggleRelayouts = 0;
+        }
+        if (isAnimating() && WHAT_EXPAND_ONLY == animEndWhat) {
+            // 动画执行中再次点击，从当前位置反向执行
+            reverseAnimation();
+        } else if (isShrink) {
             // 如果是已经折叠，那么进行非折叠处理
+            showFullText();
             doAnimation(expandLines, textLines, WHAT_EXPAND_ONLY);
         } else {
             // 如果是非折叠，那么进行折叠处理
@@ -380,6 +732,11 @@ public class ExpandableTextView2 extends LinearLayout implements OnClickListener
 
         // 切换状态
         isShrink = !isShrink;
+
+        // 按位置保存展开/折叠状态
+        if (collapsedStatus != null) {
+            collapsedStatus.put(position, isShrink);
+        }
     }
 
     public Drawable getDrawableShrink() {
@@ -403,6 +760,7 @@ public class ExpandableTextView2 extends LinearLayout implements OnClickListener
     }
 
     public void setExpandLines(int newExpandLines) {
+        showFullText();
         int start = isShrink ? this.expandLines : textLines;
         int end = textLines < newExpandLines ? textLines : newExpandLines;
         doAnimation(start, end, WHAT_ANIMATION_END);
@@ -422,8 +780,30 @@ public class ExpandableTextView2 extends LinearLayout implements OnClickListener
         return sleepTime;
     }
 
+    /**
+     * 设置每行的动画过渡时间，动画总时长不超过{@link #getAnimationDuration()}
+     */
     public void setSleepTime(int sleepTime) {
         this.sleepTime = sleepTime;
     }
 
+    public int getAnimationDuration() {
+        return animationDuration;
+    }
+
+    /**
+     * 设置动画最大时长，无论文本有多少行，动画都在此时间内完成
+     */
+    public void setAnimationDuration(int animationDuration) {
+        this.animationDuration = animationDuration;
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        if (isAnimating()) {
+            animator.end();
+        }
+    }
+
 }
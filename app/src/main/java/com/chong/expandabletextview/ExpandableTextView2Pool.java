@@ -0,0 +1,100 @@
+package com.chong.expandabletextview;
+
+import android.content.Context;
+import android.os.Looper;
+import android.os.MessageQueue;
+
+import java.util.ArrayDeque;
+
+/**
+ * 预先创建{@link ExpandableTextView2}的对象池
+ * <p>
+ * 在主线程空闲时提前创建控件，列表创建ViewHolder时通过{@link #acquire()}取出，
+ * 避免首屏集中创建控件导致掉帧。池中的控件没有父View，取出后由调用者添加到布局中。
+ * 控件只能在主线程创建，所有方法都需要在主线程调用
+ */
+public class ExpandableTextView2Pool {
+
+    private final Context mContext;
+    private final int mMaxSize;
+    private final ArrayDeque<ExpandableTextView2> mPool = new ArrayDeque<>();
+    /**
+     * 还需要创建的数量
+     */
+    private int mPending;
+
+    /**
+     * @param context 创建控件使用的Context，一般为Activity
+     * @param maxSize 池中最多保存的数量
+     */
+    public ExpandableTextView2Pool(Context context, int maxSize) {
+        mContext = context;
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * 在主线程空闲时创建控件，每次空闲只创建一个
+     *
+     * @param count 需要创建的数量
+     */
+    public void prefill(int count) {
+        if (!schedule(count)) {
+            return;
+        }
+        Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+
+            @Override
+            public boolean queueIdle() {
+                return createPending();
+            }
+        });
+    }
+
+    /**
+     * 取出一个预先创建的控件，池为空时直接创建
+     */
+    public ExpandableTextView2 acquire() {
+        ExpandableTextView2 view = mPool.poll();
+        if (view != null) {
+            return view;
+        }
+        return new ExpandableTextView2(mContext, null);
+    }
+
+    /**
+     * 池中已经创建好的数量
+     */
+    public int size() {
+        return mPool.size();
+    }
+
+    /**
+     * 清空池并取消还没有执行的创建
+     */
+    public void clear() {
+        mPool.clear();
+        mPending = 0;
+    }
+
+    /**
+     * 增加需要创建的数量，返回是否需要开始创建
+     */
+    private boolean schedule(int count) {
+        int wasPending = mPending;
+        mPending = Math.max(0, Math.min(mPending + count, mMaxSize - mPool.size()));
+        return wasPending <= 0 && mPending > 0;
+    }
+
+    /**
+     * 创建一个控件放入池中，返回是否还需要继续创建
+     */
+    private boolean createPending() {
+        if (mPending <= 0 || mPool.size() >= mMaxSize) {
+            mPending = 0;
+            return false;
+        }
+        mPool.offer(new ExpandableTextView2(mContext, null));
+        mPending--;
+        return mPending > 0;
+    }
+}
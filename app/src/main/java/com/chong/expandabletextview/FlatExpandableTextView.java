@@ -0,0 +1,380 @@
+package com.chong.expandabletextview;
+
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.content.ContextCompat;
+import android.text.Layout;
+import android.text.TextPaint;
+import android.text.TextUtils;
+import android.util.AttributeSet;
+import android.util.SparseBooleanArray;
+import android.util.TypedValue;
+import android.view.MotionEvent;
+import android.view.View;
+
+import com.chong.expandabletextview.core.CollapseEngine;
+import com.chong.expandabletextview.core.Measurement;
+
+/**
+ * 可以展开折叠的单个View，自己绘制文本、展开/折叠文本和图标
+ * <p>
+ * 与{@link ExpandableTextView}使用相同的属性，但没有子View，列表中每行只需要测量和布局一个View
+ */
+public class FlatExpandableTextView extends View {
+
+    /**
+     * 默认最大折叠最大行数
+     */
+    private static final int MAX_COLLAPSED_LINES = 8;
+    /**
+     * 默认文本字体大小，单位sp
+     */
+    private static final int DEFAULT_TEXT_SIZE = 14;
+    /**
+     * 内容文本画笔
+     */
+    private final TextPaint mTextPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+    /**
+     * 展开/折叠文本画笔
+     */
+    private final TextPaint mStatePaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+    /**
+     * 展开/折叠按钮的点击区域
+     */
+    private final Rect mToggleBounds = new Rect();
+    /**
+     * 内容文本
+     */
+    private CharSequence mText = "";
+    /**
+     * 默认TextView处于折叠状态
+     */
+    private boolean mCollapsed = true;
+    /**
+     * 折叠最大显示行数
+     */
+    private int mMaxCollapsedLines;
+    /**
+     * 向下展开的图标
+     */
+    private Drawable mExpandDrawable;
+    /**
+     * 向上折叠的图标
+     */
+    private Drawable mCollapseDrawable;
+    /**
+     * 是否展示展开/折叠按钮
+     */
+    private boolean isNeedDrawable = true;
+    /**
+     * 是否展示展开/折叠文本
+     */
+    private boolean isNeedText = false;
+    /**
+     * 向下展开文本
+     */
+    private CharSequence mExpandText;
+    /**
+     * 向上折叠文本
+     */
+    private CharSequence mCollapseText;
+    /**
+     * 只需要展开，不需要折叠
+     */
+    private boolean isOnlyExpand;
+    /**
+     * 行距倍数
+     */
+    private float mSpacingMult = 1.0f;
+    /**
+     * 行距增量
+     */
+    private float mSpacingAdd = 0.0f;
+    /**
+     * 当前宽度的测量器
+     */
+    private TextMeasurer mMeasurer;
+    /**
+     * 当前文本的测量结果
+     */
+    private Measurement mMeasurement;
+    /**
+     * 绘制的文本布局，折叠时只包含折叠行数内的文本
+     */
+    private Layout mLayout;
+    /**
+     * mLayout包含的文本结束位置，{@link Layout#getText()}返回的是全部文本，不能用来判断
+     */
+    private int mLayoutEnd;
+    /**
+     * 文本显示高度
+     */
+    private int mTextHeight;
+    /**
+     * 是否显示折叠状态
+     */
+    private boolean isCollapsedShown;
+    /**
+     * 是否显示展开/折叠按钮
+     */
+    private boolean isToggleShown;
+    /**
+     * 是否按下了展开/折叠按钮
+     */
+    private boolean isTogglePressed;
+    /**
+     * 在列表中，保存状态
+     */
+    private SparseBooleanArray mCollapsedStatus;
+    /**
+     * 列表中位置
+     */
+    private int mPosition;
+
+    public FlatExpandableTextView(Context context) {
+        this(context, null);
+    }
+
+    public FlatExpandableTextView(Context context, AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public FlatExpandableTextView(Context context, AttributeSet attrs, int defStyle) {
+        super(context, attrs, defStyle);
+        init(attrs, defStyle);
+    }
+
+    private void init(AttributeSet attrs, int defStyle) {
+        Context context = getContext();
+        TypedArray typedArray = context.obtainStyledAttributes(attrs, R.styleable.ExpandableTextView, defStyle, 0);
+        mMaxCollapsedLines = typedArray.getInt(R.styleable.ExpandableTextView_max_collapsed_lines, MAX_COLLAPSED_LINES);
+        mExpandDrawable = typedArray.getDrawable(R.styleable.ExpandableTextView_expand_drawable);
+        mCollapseDrawable = typedArray.getDrawable(R.styleable.ExpandableTextView_collapse_drawable);
+        isNeedDrawable = typedArray.getBoolean(R.styleable.ExpandableTextView_need_drawable, true);
+        isNeedText = typedArray.getBoolean(R.styleable.ExpandableTextView_need_text, false);
+        mExpandText = typedArray.getString(R.styleable.ExpandableTextView_expand_text);
+        mCollapseText = typedArray.getString(R.styleable.ExpandableTextView_collapse_text);
+        isOnlyExpand = typedArray.getBoolean(R.styleable.ExpandableTextView_only_expand, false);
+        typedArray.recycle();
+
+        float defaultTextSize = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, DEFAULT_TEXT_SIZE,
+                getResources().getDisplayMetrics());
+        typedArray = context.obtainStyledAttributes(attrs, R.styleable.FlatExpandableTextView, defStyle, 0);
+        mTextPaint.setTextSize(typedArray.getDimension(R.styleable.FlatExpandableTextView_android_textSize,
+                defaultTextSize));
+        mTextPaint.setColor(typedArray.getColor(R.styleable.FlatExpandableTextView_android_textColor,
+                ContextCompat.getColor(context, R.color.color_gray_light_content_text)));
+        mSpacingAdd = typedArray.getDimension(R.styleable.FlatExpandableTextView_android_lineSpacingExtra, 0.0f);
+        mSpacingMult = typedArray.getFloat(R.styleable.FlatExpandableTextView_android_lineSpacingMultiplier, 1.0f);
+        mStatePaint.setTextSize(mTextPaint.getTextSize());
+        mStatePaint.setColor(typedArray.getColor(R.styleable.FlatExpandableTextView_state_text_color,
+                ContextCompat.getColor(context, R.color.colorPrimary)));
+        typedArray.recycle();
+
+        if (isNeedDrawable) {
+            if (mExpandDrawable == null) {
+                mExpandDrawable = ContextCompat.getDrawable(context, R.drawable.ic_expand_more_black_12dp);
+            }
+            if (mCollapseDrawable == null) {
+                mCollapseDrawable = ContextCompat.getDrawable(context, R.drawable.ic_expand_less_black_12dp);
+            }
+        }
+        if (isNeedText) {
+            if (mExpandText == null) {
+                mExpandText = "展开";
+            }
+            if (mCollapseText == null) {
+                mCollapseText = "收起";
+            }
+        }
+        setVisibility(GONE);
+    }
+
+    public void setText(@Nullable CharSequence text) {
+        mText = text == null ? "" : text;
+        mMeasurement = null;
+        mLayout = null;
+        setVisibility(TextUtils.isEmpty(text) ? GONE : VISIBLE);
+        requestLayout();
+        invalidate();
+    }
+
+    // 在列表中使用时，设置文本
+    public void setText(@Nullable CharSequence text, @NonNull SparseBooleanArray collapsedStatus, int position) {
+        mCollapsedStatus = collapsedStatus;
+        mPosition = position;
+        mCollapsed = collapsedStatus.get(position, true);
+        setText(text);
+    }
+
+    public CharSequence getText() {
+        return mText;
+    }
+
+    public boolean isCollapsed() {
+        return mCollapsed;
+    }
+
+    /**
+     * 切换展开/折叠状态
+     */
+    public void toggle() {
+        if (!isToggleShown) {
+            return;
+        }
+        mCollapsed = !mCollapsed;
+        // 按位置保存展开/折叠状态
+        if (mCollapsedStatus != null) {
+            mCollapsedStatus.put(mPosition, mCollapsed);
+        }
+        mLayout = null;
+        requestLayout();
+        invalidate();
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int widthMode = MeasureSpec.getMode(widthMeasureSpec);
+        int widthSize = MeasureSpec.getSize(widthMeasureSpec);
+        int width;
+        if (widthMode == MeasureSpec.EXACTLY) {
+            width = widthSize;
+        } else {
+            width = (int) Math.ceil(Layout.getDesiredWidth(mText, mTextPaint)) + getPaddingLeft() + getPaddingRight();
+            if (widthMode == MeasureSpec.AT_MOST) {
+                width = Math.min(width, widthSize);
+            }
+        }
+
+        int textWidth = width - getPaddingLeft() - getPaddingRight();
+        if (textWidth > 0) {
+            if (mMeasurer == null || mMeasurer.getWidth() != textWidth) {
+                mMeasurer = TextMeasurer.obtain(mTextPaint, textWidth, mSpacingMult, mSpacingAdd, mMaxCollapsedLines);
+                mLayout = null;
+            }
+            // 折叠状态只测量折叠部分，测量结果在进程内共享
+            mMeasurement = mMeasurer.measureCached(mText, mCollapsed);
+        } else {
+            mMeasurement = null;
+        }
+
+        int lineCount = mMeasurement != null ? mMeasurement.lineCount : 0;
+        isCollapsedShown = mCollapsed && CollapseEngine.needsCollapse(lineCount, mMaxCollapsedLines);
+        isToggleShown = (isNeedDrawable || isNeedText) && CollapseEngine.getToggleState(lineCount,
+                mMaxCollapsedLines, mCollapsed, isOnlyExpand, false) != CollapseEngine.ToggleState.HIDDEN;
+        if (mMeasurement == null) {
+            mTextHeight = 0;
+        } else {
+            mTextHeight = isCollapsedShown ? mMeasurement.collapsedHeight : mMeasurement.fullHeight;
+        }
+
+        int toggleHeight = isToggleShown ? getToggleHeight() : 0;
+        int height = Math.max(getPaddingTop() + mTextHeight + toggleHeight + getPaddingBottom(),
+                getSuggestedMinimumHeight());
+        setMeasuredDimension(width, resolveSize(height, heightMeasureSpec));
+
+        int toggleTop = getPaddingTop() + mTextHeight;
+        mToggleBounds.set(0, toggleTop, width, toggleTop + toggleHeight);
+    }
+
+    /**
+     * 展开/折叠按钮一行的高度
+     */
+    private int getToggleHeight() {
+        int height = 0;
+        if (isNeedDrawable) {
+            Drawable drawable = mCollapsed ? mExpandDrawable : mCollapseDrawable;
+            height = Math.max(height, drawable.getIntrinsicHeight());
+        }
+        if (isNeedText) {
+            height = Math.max(height, mStatePaint.getFontMetricsInt(null));
+        }
+        return height;
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (mMeasurement == null || mMeasurer == null) {
+            return;
+        }
+        int end = CollapseEngine.getDisplayEnd(mMeasurement, mText.length(), mMaxCollapsedLines, mCollapsed, false);
+        if (mLayout == null || mLayoutEnd != end) {
+            mLayout = mMeasurer.createLayout(mText, end);
+            mLayoutEnd = end;
+        }
+
+        canvas.save();
+        canvas.translate(getPaddingLeft(), getPaddingTop());
+        canvas.clipRect(0, 0, mLayout.getWidth(), mTextHeight);
+        mLayout.draw(canvas);
+        canvas.restore();
+
+        if (!isToggleShown) {
+            return;
+        }
+        int centerY = mToggleBounds.centerY();
+        if (isNeedText) {
+            CharSequence stateText = mCollapsed ? mExpandText : mCollapseText;
+            Paint.FontMetrics metrics = mStatePaint.getFontMetrics();
+            float baseline = centerY - (metrics.ascent + metrics.descent) / 2;
+            canvas.drawText(stateText, 0, stateText.length(), getPaddingLeft(), baseline, mStatePaint);
+        }
+        if (isNeedDrawable) {
+            Drawable drawable = mCollapsed ? mExpandDrawable : mCollapseDrawable;
+            int right = getWidth() - getPaddingRight();
+            int top = centerY - drawable.getIntrinsicHeight() / 2;
+            drawable.setBounds(right - drawable.getIntrinsicWidth(), top, right, top + drawable.getIntrinsicHeight());
+            drawable.draw(canvas);
+        }
+    }
+
+    /**
+     * 当前绘制的文本布局，用于测试
+     */
+    @Nullable
+    Layout getLayout() {
+        return mLayout;
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if (!isToggleShown) {
+            return super.onTouchEvent(event);
+        }
+        boolean inToggle = mToggleBounds.contains((int) event.getX(), (int) event.getY());
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                isTogglePressed = inToggle;
+                if (inToggle) {
+                    return true;
+                }
+                break;
+            case MotionEvent.ACTION_UP:
+                if (isTogglePressed) {
+                    isTogglePressed = false;
+                    if (inToggle) {
+                        performClick();
+                    }
+                    return true;
+                }
+                break;
+            case MotionEvent.ACTION_CANCEL:
+                isTogglePressed = false;
+                break;
+        }
+        return super.onTouchEvent(event);
+    }
+
+    @Override
+    public boolean performClick() {
+        boolean handled = super.performClick();
+        toggle();
+        return handled || isToggleShown;
+    }
+}
@@ -0,0 +1,73 @@
+package com.chong.expandabletextview;
+
+import java.util.Arrays;
+
+/**
+ * 按2的幂分桶的直方图，记录时不分配内存
+ * <p>
+ * 第0个桶记录0，第i个桶记录[2^(i-1), 2^i)范围的值，百分位数返回所在桶的上界
+ */
+public class Histogram {
+
+    private static final int BUCKETS = 64;
+
+    private final long[] mBuckets = new long[BUCKETS];
+    private long mCount;
+    private long mSum;
+    private long mMax;
+
+    public synchronized void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        mBuckets[BUCKETS - Long.numberOfLeadingZeros(value)]++;
+        mCount++;
+        mSum += value;
+        mMax = Math.max(mMax, value);
+    }
+
+    public synchronized long getCount() {
+        return mCount;
+    }
+
+    public synchronized long getMax() {
+        return mMax;
+    }
+
+    public synchronized double getMean() {
+        return mCount == 0 ? 0.0 : (double) mSum / mCount;
+    }
+
+    /**
+     * 获取百分位数的近似值
+     *
+     * @param percentile 百分位，范围[0, 100]
+     */
+    public synchronized long getPercentile(double percentile) {
+        if (mCount == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(mCount * Math.min(100.0, Math.max(0.0, percentile)) / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += mBuckets[i];
+            if (seen >= Math.max(1, rank)) {
+                return i == 0 ? 0 : Math.min(mMax, (1L << i) - 1);
+            }
+        }
+        return mMax;
+    }
+
+    public synchronized void reset() {
+        Arrays.fill(mBuckets, 0);
+        mCount = 0;
+        mSum = 0;
+        mMax = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "count=" + mCount + ", mean=" + Math.round(getMean()) + ", p50=" + getPercentile(50)
+                + ", p90=" + getPercentile(90) + ", p99=" + getPercentile(99) + ", max=" + mMax;
+    }
+}
@@ -0,0 +1,61 @@
+package com.chong.expandabletextview;
+
+import android.text.Layout;
+
+import com.chong.expandabletextview.core.TextLines;
+
+/**
+ * 将{@link Layout}作为{@link TextLines}交给{@link com.chong.expandabletextview.core.CollapseEngine}使用
+ */
+public final class LayoutLines implements TextLines {
+
+    private final Layout mLayout;
+
+    public LayoutLines(Layout layout) {
+        mLayout = layout;
+    }
+
+    public Layout getLayout() {
+        return mLayout;
+    }
+
+    @Override
+    public CharSequence getText() {
+        return mLayout.getText();
+    }
+
+    @Override
+    public int getLineCount() {
+        return mLayout.getLineCount();
+    }
+
+    @Override
+    public int getLineTop(int line) {
+        return mLayout.getLineTop(line);
+    }
+
+    @Override
+    public int getLineStart(int line) {
+        return mLayout.getLineStart(line);
+    }
+
+    @Override
+    public int getLineEnd(int line) {
+        return mLayout.getLineEnd(line);
+    }
+
+    @Override
+    public int getLineVisibleEnd(int line) {
+        return mLayout.getLineVisibleEnd(line);
+    }
+
+    @Override
+    public float getLineMax(int line) {
+        return mLayout.getLineMax(line);
+    }
+
+    @Override
+    public float getPrimaryHorizontal(int offset) {
+        return mLayout.getPrimaryHorizontal(offset);
+    }
+}
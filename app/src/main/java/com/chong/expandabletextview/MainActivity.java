@@ -5,9 +5,10 @@ import android.support.design.widget.TabLayout;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.FragmentManager;
 import android.support.v4.app.FragmentPagerAdapter;
-import android.support.v4.app.ListFragment;
 import android.support.v4.view.ViewPager;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -17,7 +18,12 @@ import android.widget.Toast;
 public class MainActivity extends AppCompatActivity {
 
     private static final String POSITION = "POSITION";
+    /**
+     * 预先创建的ExpandableTextView2数量，大约为一屏的行数
+     */
+    private static final int TEXT_VIEW_POOL_SIZE = 20;
     private SectionsPagerAdapter mSectionsPagerAdapter;
+    private ExpandableTextView2Pool mTextViewPool;
     private ViewPager mViewPager;
 
     private TabLayout mTabLayout;
@@ -26,6 +32,9 @@ public class MainActivity extends AppCompatActivity {
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
+        // 在第一帧之后的空闲时间创建，切换到ExpandableTextView2列表时直接取出
+        mTextViewPool = new ExpandableTextView2Pool(this, TEXT_VIEW_POOL_SIZE);
+        mTextViewPool.prefill(TEXT_VIEW_POOL_SIZE);
 
         mSectionsPagerAdapter = new SectionsPagerAdapter(getSupportFragmentManager());
         mViewPager = (ViewPager) findViewById(R.id.container);
@@ -42,6 +51,16 @@ public class MainActivity extends AppCompatActivity {
         tabLayout.setupWithViewPager(mViewPager);
     }
 
+    ExpandableTextView2Pool getTextViewPool() {
+        return mTextViewPool;
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mTextViewPool.clear();
+    }
+
     @Override
     public void onSaveInstanceState(Bundle outState) {
         super.onSaveInstanceState(outState);
@@ -64,14 +83,16 @@ public class MainActivity extends AppCompatActivity {
         public Fragment getItem(int position) {
             if (position == 0) {
                 return new Demo1Fragment();
-            } else {
+            } else if (position == 1) {
                 return new Demo2Fragment();
+            } else {
+                return new Demo3Fragment();
             }
         }
 
         @Override
         public int getCount() {
-            return 2;
+            return 3;
         }
 
         @Override
@@ -81,6 +102,8 @@ public class MainActivity extends AppCompatActivity {
                     return getString(R.string.title_demo1);
                 case 1:
                     return getString(R.string.title_demo2);
+                case 2:
+                    return getString(R.string.title_demo3);
             }
             return null;
         }
@@ -107,14 +130,39 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
-    public static class Demo2Fragment extends ListFragment {
+    public static class Demo2Fragment extends Fragment {
+        private SampleTextRecyclerAdapter mAdapter;
+
         @Override
-        public void onViewCreated(View view, Bundle savedInstanceState) {
-            super.onViewCreated(view, savedInstanceState);
-            SampleTextListAdapter adapter = new SampleTextListAdapter(getActivity());
-            setListAdapter(adapter);
+        public View onCreateView(LayoutInflater inflater, ViewGroup container,
+                                 Bundle savedInstanceState) {
+            RecyclerView recyclerView = (RecyclerView) inflater.inflate(R.layout.fragment_demo2, container, false);
+            recyclerView.setLayoutManager(new LinearLayoutManager(getActivity()));
+            mAdapter = new SampleTextRecyclerAdapter(getActivity());
+            mAdapter.onRestoreInstanceState(savedInstanceState);
+            recyclerView.setAdapter(mAdapter);
+            return recyclerView;
+        }
+
+        @Override
+        public void onSaveInstanceState(Bundle outState) {
+            super.onSaveInstanceState(outState);
+            if (mAdapter != null) {
+                mAdapter.onSaveInstanceState(outState);
+            }
         }
 
     }
-}
 
+    public static class Demo3Fragment extends Fragment {
+        @Override
+        public View onCreateView(LayoutInflater inflater, ViewGroup container,
+                                 Bundle savedInstanceState) {
+            RecyclerView recyclerView = (RecyclerView) inflater.inflate(R.layout.fragment_demo2, container, false);
+            recyclerView.setLayoutManager(new LinearLayoutManager(getActivity()));
+            recyclerView.setAdapter(new SampleText2RecyclerAdapter(getActivity(),
+                    ((MainActivity) getActivity()).getTextViewPool()));
+            return recyclerView;
+        }
+    }
+}
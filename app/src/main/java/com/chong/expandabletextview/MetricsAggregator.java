@@ -0,0 +1,185 @@
+package com.chong.expandabletextview;
+
+import android.view.View;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * 汇总{@link ExpandMetrics}的回调，统计每个控件的次数和全部控件的耗时分布
+ * <p>
+ * 使用时通过{@link ExpandMetrics#setListener}设置，耗时的直方图单位为微秒
+ */
+public class MetricsAggregator implements ExpandMetrics.Listener {
+
+    private final Histogram mMeasureMicros = new Histogram();
+    private final Histogram mBindMicros = new Histogram();
+    private final Histogram mCacheLookupMicros = new Histogram();
+    private final Histogram mRelayoutsPerToggle = new Histogram();
+    private final Histogram mAnimationMillis = new Histogram();
+    private final Histogram mSkippedFrames = new Histogram();
+    private final Map<View, ViewStats> mViewStats = new WeakHashMap<>();
+    private long mCacheHits;
+    private long mCacheMisses;
+    private long mShortTextSkips;
+    private long mShortTextLayouts;
+
+    /**
+     * 单个控件的统计
+     */
+    public static class ViewStats {
+        public int measures;
+        public long measureNanos;
+        public int binds;
+        public int toggles;
+        public int relayouts;
+        public int animations;
+        public int frames;
+        public int skippedFrames;
+
+        @Override
+        public String toString() {
+            return "measures=" + measures + ", measureMicros=" + measureNanos / 1000 + ", binds=" + binds
+                    + ", toggles=" + toggles + ", relayouts=" + relayouts + ", animations=" + animations
+                    + ", frames=" + frames + ", skippedFrames=" + skippedFrames;
+        }
+    }
+
+    private ViewStats obtainStats(View view) {
+        ViewStats stats = mViewStats.get(view);
+        if (stats == null) {
+            stats = new ViewStats();
+            mViewStats.put(view, stats);
+        }
+        return stats;
+    }
+
+    @Override
+    public synchronized void onMeasure(View view, long durationNanos) {
+        mMeasureMicros.record(durationNanos / 1000);
+        ViewStats stats = obtainStats(view);
+        stats.measures++;
+        stats.measureNanos += durationNanos;
+    }
+
+    @Override
+    public synchronized void onBind(View view, long durationNanos) {
+        mBindMicros.record(durationNanos / 1000);
+        obtainStats(view).binds++;
+    }
+
+    @Override
+    public synchronized void onCacheLookup(View view, boolean hit, long durationNanos) {
+        mCacheLookupMicros.record(durationNanos / 1000);
+        if (hit) {
+            mCacheHits++;
+        } else {
+            mCacheMisses++;
+        }
+    }
+
+    @Override
+    public synchronized void onShortTextCheck(View view, boolean skipped) {
+        if (skipped) {
+            mShortTextSkips++;
+        } else {
+            mShortTextLayouts++;
+        }
+    }
+
+    @Override
+    public synchronized void onToggle(View view, int relayouts) {
+        mRelayoutsPerToggle.record(relayouts);
+        ViewStats stats = obtainStats(view);
+        stats.toggles++;
+        stats.relayouts += relayouts;
+    }
+
+    @Override
+    public synchronized void onAnimation(View view, long durationNanos, int frames, int skippedFrames) {
+        mAnimationMillis.record(durationNanos / 1000000);
+        mSkippedFrames.record(skippedFrames);
+        ViewStats stats = obtainStats(view);
+        stats.animations++;
+        stats.frames += frames;
+        stats.skippedFrames += skippedFrames;
+    }
+
+    /**
+     * 获取控件的统计，没有统计时返回null
+     */
+    public synchronized ViewStats getViewStats(View view) {
+        return mViewStats.get(view);
+    }
+
+    public Histogram getMeasureMicros() {
+        return mMeasureMicros;
+    }
+
+    public Histogram getBindMicros() {
+        return mBindMicros;
+    }
+
+    public Histogram getCacheLookupMicros() {
+        return mCacheLookupMicros;
+    }
+
+    public Histogram getRelayoutsPerToggle() {
+        return mRelayoutsPerToggle;
+    }
+
+    public Histogram getAnimationMillis() {
+        return mAnimationMillis;
+    }
+
+    public Histogram getSkippedFrames() {
+        return mSkippedFrames;
+    }
+
+    public synchronized long getCacheHits() {
+        return mCacheHits;
+    }
+
+    public synchronized long getCacheMisses() {
+        return mCacheMisses;
+    }
+
+    /**
+     * 不需要布局就确定不折叠的次数
+     */
+    public synchronized long getShortTextSkips() {
+        return mShortTextSkips;
+    }
+
+    /**
+     * 短文本判断无法确定，需要布局的次数
+     */
+    public synchronized long getShortTextLayouts() {
+        return mShortTextLayouts;
+    }
+
+    public synchronized void reset() {
+        mMeasureMicros.reset();
+        mBindMicros.reset();
+        mCacheLookupMicros.reset();
+        mRelayoutsPerToggle.reset();
+        mAnimationMillis.reset();
+        mSkippedFrames.reset();
+        mViewStats.clear();
+        mCacheHits = 0;
+        mCacheMisses = 0;
+        mShortTextSkips = 0;
+        mShortTextLayouts = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "measure(us): " + mMeasureMicros
+                + "\nbind(us): " + mBindMicros
+                + "\ncache lookup(us): " + mCacheLookupMicros + ", hits=" + mCacheHits + ", misses=" + mCacheMisses
+                + "\nshort text: skipped=" + mShortTextSkips + ", laid out=" + mShortTextLayouts
+                + "\nrelayouts per toggle: " + mRelayoutsPerToggle
+                + "\nanimation(ms): " + mAnimationMillis
+                + "\nskipped frames: " + mSkippedFrames;
+    }
+}
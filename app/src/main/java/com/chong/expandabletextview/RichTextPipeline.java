@@ -0,0 +1,209 @@
+package com.chong.expandabletextview;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.LruCache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * 在后台把HTML、markdown等原始内容解析为带span的文本，再绑定到{@link ExpandableTextView}
+ * <p>
+ * 每个请求依次经过三个阶段：在Executor中解析，在同一个线程中按控件上次测量的宽度测量并放入{@link TextLayoutCache}，
+ * 最后在主线程绑定，绑定时直接使用缓存的测量结果。解析结果按原始内容缓存，总字符数有上限，
+ * 滑回已经显示过的item时同步绑定，不再解析；同一内容正在解析时的请求合并为一个。
+ * 控件在解析完成前重新绑定了其他内容时，旧的结果只放入缓存，不会绑定
+ * <p>
+ * 除了{@link Parser#parse}，所有方法都需要在主线程调用
+ */
+public class RichTextPipeline {
+
+    /**
+     * 解析原始内容，在后台线程调用
+     */
+    public interface Parser {
+
+        /**
+         * @param source 原始内容
+         * @return 带span的文本，解析后不能再被修改
+         */
+        CharSequence parse(String source);
+    }
+
+    /**
+     * 默认缓存的总字符数
+     */
+    private static final int DEFAULT_MAX_CACHE_CHARS = 512 * 1024;
+
+    private final Parser mParser;
+    private final Executor mExecutor;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    /**
+     * 原始内容到解析结果，大小按原始内容和解析结果的字符数计算
+     */
+    private final LruCache<String, CharSequence> mCache;
+    /**
+     * 正在解析的请求，同一内容只解析一次
+     */
+    private final HashMap<String, Request> mPending = new HashMap<>();
+    private int mParseCount;
+
+    public RichTextPipeline(@NonNull Parser parser, @NonNull Executor executor) {
+        this(parser, executor, DEFAULT_MAX_CACHE_CHARS);
+    }
+
+    /**
+     * @param parser        解析器
+     * @param executor      解析和测量使用的Executor
+     * @param maxCacheChars 缓存的原始内容和解析结果的总字符数
+     */
+    public RichTextPipeline(@NonNull Parser parser, @NonNull Executor executor, int maxCacheChars) {
+        mParser = parser;
+        mExecutor = executor;
+        mCache = new LruCache<String, CharSequence>(maxCacheChars) {
+
+            @Override
+            protected int sizeOf(String key, CharSequence value) {
+                return key.length() + value.length();
+            }
+        };
+    }
+
+    /**
+     * 绑定原始内容，已经解析过时立即设置文本，否则先清空控件，解析和测量完成后再设置
+     *
+     * @param view       显示文本的控件
+     * @param source     原始内容
+     * @param stateStore 保存展开/折叠状态的store
+     * @param id         item id
+     */
+    public void bind(@NonNull ExpandableTextView view, @Nullable String source,
+                     @NonNull ExpandStateStore stateStore, long id) {
+        if (source == null) {
+            view.setTag(R.id.rich_text_source, null);
+            view.setText(null, stateStore, id);
+            return;
+        }
+        CharSequence parsed = mCache.get(source);
+        if (parsed != null) {
+            view.setTag(R.id.rich_text_source, null);
+            view.setText(parsed, stateStore, id);
+            return;
+        }
+        view.setTag(R.id.rich_text_source, source);
+        view.setText(null, stateStore, id);
+        Request request = obtainRequest(source, view.obtainMeasurer(), stateStore.isCollapsed(id));
+        request.mTargets.add(new Target(view, stateStore, id));
+    }
+
+    /**
+     * 提前在后台解析即将显示的内容，已经缓存或正在解析时忽略
+     */
+    public void prefetch(@NonNull String source) {
+        if (mCache.get(source) == null) {
+            obtainRequest(source, null, true);
+        }
+    }
+
+    /**
+     * 同一内容正在解析时返回已有的请求，否则提交新的请求
+     *
+     * @param measurer  解析后测量使用的测量器，为null时不测量
+     * @param collapsed 是否只需要折叠状态的测量结果
+     */
+    private Request obtainRequest(String source, @Nullable TextMeasurer measurer, boolean collapsed) {
+        Request request = mPending.get(source);
+        if (request == null) {
+            request = new Request(source, measurer, collapsed);
+            mPending.put(source, request);
+            mParseCount++;
+            mExecutor.execute(request);
+        }
+        return request;
+    }
+
+    /**
+     * 在主线程绑定解析结果，控件已经重新绑定了其他内容时跳过
+     */
+    private void deliver(Request request, CharSequence parsed) {
+        mPending.remove(request.mSource);
+        mCache.put(request.mSource, parsed);
+        for (Target target : request.mTargets) {
+            if (request.mSource.equals(target.mView.getTag(R.id.rich_text_source))) {
+                target.mView.setTag(R.id.rich_text_source, null);
+                target.mView.setText(parsed, target.mStateStore, target.mId);
+            }
+        }
+    }
+
+    /**
+     * 清空解析结果的缓存，正在解析的请求不受影响
+     */
+    public void clear() {
+        mCache.evictAll();
+    }
+
+    /**
+     * 提交解析的次数，用于验证缓存和合并请求
+     */
+    int getParseCount() {
+        return mParseCount;
+    }
+
+    private static final class Target {
+        final ExpandableTextView mView;
+        final ExpandStateStore mStateStore;
+        final long mId;
+
+        Target(ExpandableTextView view, ExpandStateStore stateStore, long id) {
+            mView = view;
+            mStateStore = stateStore;
+            mId = id;
+        }
+    }
+
+    private final class Request implements Runnable {
+        final String mSource;
+        final TextMeasurer mMeasurer;
+        final boolean isCollapsed;
+        /**
+         * 等待结果的控件，只在主线程访问
+         */
+        final ArrayList<Target> mTargets = new ArrayList<>(1);
+
+        Request(String source, TextMeasurer measurer, boolean collapsed) {
+            mSource = source;
+            mMeasurer = measurer;
+            isCollapsed = collapsed;
+        }
+
+        @Override
+        public void run() {
+            CharSequence parsed;
+            try {
+                parsed = mParser.parse(mSource);
+            } catch (RuntimeException e) {
+                // 无法解析的内容按纯文本显示
+                parsed = mSource;
+            }
+            if (parsed == null) {
+                parsed = mSource;
+            }
+            if (mMeasurer != null) {
+                mMeasurer.measureCached(parsed, isCollapsed);
+            }
+            final CharSequence result = parsed;
+            mMainHandler.post(new Runnable() {
+
+                @Override
+                public void run() {
+                    deliver(Request.this, result);
+                }
+            });
+        }
+    }
+}
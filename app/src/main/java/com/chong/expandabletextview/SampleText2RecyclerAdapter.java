@@ -0,0 +1,56 @@
+package com.chong.expandabletextview;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.v7.widget.RecyclerView;
+import android.util.SparseBooleanArray;
+import android.view.ViewGroup;
+
+/**
+ * 在RecyclerView中使用ExpandableTextView2
+ * <p>
+ * 控件不从布局文件加载，创建ViewHolder时从{@link ExpandableTextView2Pool}中取出主线程空闲时预先创建好的控件，
+ * 首屏集中创建ViewHolder时不需要再创建控件
+ */
+public class SampleText2RecyclerAdapter extends RecyclerView.Adapter<SampleText2RecyclerAdapter.ViewHolder> {
+
+    private final ExpandableTextView2Pool mPool;
+    private final SparseBooleanArray mCollapsedStatus = new SparseBooleanArray();
+    private final String[] sampleStrings;
+
+    /**
+     * @param context 获取示例文本的Context
+     * @param pool    预先创建控件的池，一般在Activity创建时开始填充
+     */
+    public SampleText2RecyclerAdapter(Context context, @NonNull ExpandableTextView2Pool pool) {
+        mPool = pool;
+        sampleStrings = context.getResources().getStringArray(R.array.sampleStrings);
+    }
+
+    @Override
+    public int getItemCount() {
+        return sampleStrings.length;
+    }
+
+    @Override
+    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        ExpandableTextView2 view = mPool.acquire();
+        view.setLayoutParams(new RecyclerView.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT,
+                ViewGroup.LayoutParams.WRAP_CONTENT));
+        return new ViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(ViewHolder holder, int position) {
+        holder.expandableTextView.setText(sampleStrings[position], mCollapsedStatus, position);
+    }
+
+    static class ViewHolder extends RecyclerView.ViewHolder {
+        final ExpandableTextView2 expandableTextView;
+
+        ViewHolder(ExpandableTextView2 itemView) {
+            super(itemView);
+            expandableTextView = itemView;
+        }
+    }
+}
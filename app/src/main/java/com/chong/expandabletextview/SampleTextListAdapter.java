@@ -1,6 +1,7 @@
 package com.chong.expandabletextview;
 
 import android.content.Context;
+import android.support.annotation.Nullable;
 import android.util.SparseBooleanArray;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -15,9 +16,30 @@ public class SampleTextListAdapter extends BaseAdapter {
     private final String[] sampleStrings;
 
     public SampleTextListAdapter(Context context) {
+        this(context, context.getResources().getStringArray(R.array.sampleStrings));
+    }
+
+    public SampleTextListAdapter(Context context, String[] sampleStrings) {
         mContext = context;
         mCollapsedStatus = new SparseBooleanArray();
-        sampleStrings = mContext.getResources().getStringArray(R.array.sampleStrings);
+        this.sampleStrings = sampleStrings;
+    }
+
+    /**
+     * 展开或折叠全部item，屏幕上的item在下一次布局中统一更新，其余item在getView中更新
+     *
+     * @param listView 显示的ListView，为null时只修改保存的状态
+     */
+    public void setAllCollapsed(boolean collapsed, @Nullable ViewGroup listView) {
+        mCollapsedStatus.clear();
+        if (!collapsed) {
+            for (int i = 0; i < sampleStrings.length; i++) {
+                mCollapsedStatus.append(i, false);
+            }
+        }
+        if (listView != null) {
+            ExpandableTextView.syncCollapsedStates(listView);
+        }
     }
 
     @Override
@@ -0,0 +1,140 @@
+package com.chong.expandabletextview;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v7.widget.RecyclerView;
+import android.util.DisplayMetrics;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * 在RecyclerView中使用ExpandableTextView
+ * <p>
+ * 使用稳定的id，id由item的内容计算，不随位置改变，插入或删除item以及重建Activity后其他item的id和状态不变。
+ * RecyclerView在空闲时间预取即将显示的位置时，绑定过程中提前完成文本布局和折叠判断。
+ * 展开/折叠状态和测量结果按id保存在{@link ExpandStateStore}中
+ */
+public class SampleTextRecyclerAdapter extends RecyclerView.Adapter<SampleTextRecyclerAdapter.ViewHolder> {
+
+    private final Context mContext;
+    private static final String STATE_EXPANDED_IDS = "expanded_ids";
+    /**
+     * 所有item共享的后台测量线程，示例文本不会被修改
+     */
+    private static final Executor MEASURE_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    private final ExpandStateStore mStateStore;
+    private final List<Item> mItems;
+    private RecyclerView mRecyclerView;
+
+    public SampleTextRecyclerAdapter(Context context) {
+        mContext = context;
+        String[] sampleStrings = mContext.getResources().getStringArray(R.array.sampleStrings);
+        List<Item> items = new ArrayList<>(sampleStrings.length);
+        // 相同的文本按出现的次序区分
+        Map<String, Integer> occurrences = new HashMap<>();
+        for (String text : sampleStrings) {
+            Integer occurrence = occurrences.get(text);
+            int index = occurrence == null ? 0 : occurrence + 1;
+            occurrences.put(text, index);
+            items.add(new Item(TextLayoutCache.hashText(text) * 31 + index, text));
+        }
+        mItems = Collections.unmodifiableList(items);
+        mStateStore = new ExpandStateStore(sampleStrings.length);
+        setHasStableIds(true);
+    }
+
+    @Override
+    public int getItemCount() {
+        return mItems.size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return mItems.get(position).id;
+    }
+
+    /**
+     * 展开或折叠全部item，一次更新保存的状态，屏幕上的item在下一次布局中统一更新
+     */
+    public void setAllCollapsed(boolean collapsed) {
+        mStateStore.setAllCollapsed(collapsed);
+        if (mRecyclerView != null) {
+            ExpandableTextView.syncCollapsedStates(mRecyclerView);
+        }
+    }
+
+    public void onSaveInstanceState(@NonNull Bundle outState) {
+        mStateStore.saveInstanceState(outState, STATE_EXPANDED_IDS);
+    }
+
+    public void onRestoreInstanceState(@Nullable Bundle savedInstanceState) {
+        mStateStore.restoreInstanceState(savedInstanceState, STATE_EXPANDED_IDS);
+    }
+
+    @Override
+    public void onAttachedToRecyclerView(RecyclerView recyclerView) {
+        mRecyclerView = recyclerView;
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(RecyclerView recyclerView) {
+        mRecyclerView = null;
+    }
+
+    @Override
+    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View itemView = LayoutInflater.from(mContext).inflate(R.layout.list_item, parent, false);
+        ViewHolder holder = new ViewHolder(itemView);
+        // 列表占满屏幕宽度，在后台提前测量竖屏和横屏的宽度，旋转后不需要重新换行
+        holder.expandableTextView.setMeasureExecutor(MEASURE_EXECUTOR);
+        DisplayMetrics metrics = mContext.getResources().getDisplayMetrics();
+        holder.expandableTextView.setWidthBuckets(Math.min(metrics.widthPixels, metrics.heightPixels),
+                Math.max(metrics.widthPixels, metrics.heightPixels));
+        return holder;
+    }
+
+    @Override
+    public void onBindViewHolder(ViewHolder holder, int position) {
+        Item item = mItems.get(position);
+        holder.expandableTextView.setText(item.text, mStateStore, item.id);
+        // 预取创建的ViewHolder还没有测量过，按RecyclerView的宽度提前布局
+        if (mRecyclerView != null && mRecyclerView.getWidth() > 0) {
+            holder.expandableTextView.prefetch(mRecyclerView.getWidth()
+                    - mRecyclerView.getPaddingLeft() - mRecyclerView.getPaddingRight());
+        }
+    }
+
+    /**
+     * 列表项，id由文本内容计算，不随位置改变
+     */
+    private static final class Item {
+        final long id;
+        final String text;
+
+        Item(long id, String text) {
+            this.id = id;
+            this.text = text;
+        }
+    }
+
+    static class ViewHolder extends RecyclerView.ViewHolder {
+        final ExpandableTextView expandableTextView;
+
+        ViewHolder(View itemView) {
+            super(itemView);
+            expandableTextView = (ExpandableTextView) itemView.findViewById(R.id.expand_text_view);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.chong.expandabletextview;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.drawable.Drawable;
+import android.support.v4.content.ContextCompat;
+import android.util.AttributeSet;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * 按主题和布局属性缓存控件解析后的样式
+ * <p>
+ * 同一主题下属性完全相同的控件（例如列表中由同一布局创建的每一行）只在第一次创建时调用
+ * obtainStyledAttributes和加载图片，之后直接使用缓存的样式，图片通过共享的ConstantState创建。
+ * 主题被回收后缓存随之释放。{@link ExpandableTextView2Pool}可能在后台线程创建控件，所以读写缓存需要同步
+ *
+ * @param <T> 解析后的样式
+ */
+class StyleCache<T> {
+
+    /**
+     * 解析样式，只在缓存中没有时调用
+     */
+    interface Resolver<T> {
+        T resolve(Context context, AttributeSet attrs);
+    }
+
+    private final Map<Resources.Theme, Map<Key, T>> mCache = new WeakHashMap<>();
+
+    /**
+     * 获取样式，缓存中没有时解析并放入缓存
+     */
+    synchronized T obtain(Context context, AttributeSet attrs, Resolver<T> resolver) {
+        Resources.Theme theme = context.getTheme();
+        Map<Key, T> styles = mCache.get(theme);
+        if (styles == null) {
+            styles = new HashMap<>();
+            mCache.put(theme, styles);
+        }
+        Key key = new Key(attrs);
+        T style = styles.get(key);
+        if (style == null) {
+            style = resolver.resolve(context, attrs);
+            styles.put(key, style);
+        }
+        return style;
+    }
+
+    synchronized void clear() {
+        mCache.clear();
+    }
+
+    /**
+     * 获取图片的ConstantState，用于之后创建共享状态的图片
+     */
+    static Drawable.ConstantState getConstantState(Drawable drawable) {
+        return drawable == null ? null : drawable.getConstantState();
+    }
+
+    /**
+     * 通过共享的ConstantState创建图片，不支持共享时按资源id加载
+     *
+     * @param state 图片的ConstantState，可以为null
+     * @param resId 图片的资源id，为0时返回null
+     */
+    static Drawable newDrawable(Context context, Drawable.ConstantState state, int resId) {
+        if (state != null) {
+            return state.newDrawable(context.getResources());
+        }
+        return resId != 0 ? ContextCompat.getDrawable(context, resId) : null;
+    }
+
+    /**
+     * 布局中的全部属性名和原始值，引用和主题属性保存为资源id，不需要解析
+     */
+    private static final class Key {
+        private final int styleAttribute;
+        private final int[] names;
+        private final String[] values;
+        private final int hashCode;
+
+        Key(AttributeSet attrs) {
+            if (attrs == null) {
+                styleAttribute = 0;
+                names = new int[0];
+                values = new String[0];
+            } else {
+                int count = attrs.getAttributeCount();
+                styleAttribute = attrs.getStyleAttribute();
+                names = new int[count];
+                values = new String[count];
+                for (int i = 0; i < count; i++) {
+                    names[i] = attrs.getAttributeNameResource(i);
+                    values[i] = names[i] != 0 ? attrs.getAttributeValue(i) : attrs.getAttributeName(i)
+                            + '=' + attrs.getAttributeValue(i);
+                }
+            }
+            hashCode = 31 * (31 * styleAttribute + Arrays.hashCode(names)) + Arrays.hashCode(values);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return hashCode == key.hashCode
+                    && styleAttribute == key.styleAttribute
+                    && Arrays.equals(names, key.names)
+                    && Arrays.equals(values, key.values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
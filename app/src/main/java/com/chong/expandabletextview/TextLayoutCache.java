@@ -0,0 +1,402 @@
+package com.chong.expandabletextview;
+
+import android.graphics.Rect;
+import android.graphics.Typeface;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.text.Spanned;
+import android.text.TextPaint;
+import android.text.style.AbsoluteSizeSpan;
+import android.text.style.DynamicDrawableSpan;
+import android.text.style.LocaleSpan;
+import android.text.style.MetricAffectingSpan;
+import android.text.style.RelativeSizeSpan;
+import android.text.style.ScaleXSpan;
+import android.text.style.StyleSpan;
+import android.text.style.SubscriptSpan;
+import android.text.style.SuperscriptSpan;
+import android.text.style.TextAppearanceSpan;
+import android.text.style.TypefaceSpan;
+import android.widget.TextView;
+
+import com.chong.expandabletextview.core.MappedText;
+import com.chong.expandabletextview.core.Measurement;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 文本测量结果缓存，进程内共享
+ * <p>
+ * 按文本内容、可用宽度和影响换行的画笔及布局设置缓存行数、折叠高度和完整高度，
+ * 列表中重新绑定已经测量过的内容时，不需要再次对全部文本进行布局。
+ * key只保存文本内容和改变字体度量的span的64位哈希，不保存文本本身；
+ * 缓存大小按测量过的文本字符数计算，单个文本最多计入总大小的1/8，很长的文本不会清空整个缓存
+ */
+public class TextLayoutCache {
+
+    /**
+     * 默认缓存的文本总字符数
+     */
+    private static final int DEFAULT_MAX_CHARS = 256 * 1024;
+    /**
+     * 每个条目在文本字符数之外计入的固定大小
+     */
+    private static final int ENTRY_OVERHEAD_CHARS = 64;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static TextLayoutCache sInstance;
+
+    private final LinkedHashMap<Key, Measurement> mCache = new LinkedHashMap<>(16, 0.75f, true);
+    private final int mBaseMaxChars;
+    private int mMaxChars;
+    private int mChars;
+    private int mHitCount;
+    private int mMissCount;
+    private int mEvictionCount;
+
+    /**
+     * @param maxChars 缓存的文本总字符数
+     */
+    public TextLayoutCache(int maxChars) {
+        mBaseMaxChars = maxChars;
+        mMaxChars = maxChars;
+    }
+
+    public static synchronized TextLayoutCache getInstance() {
+        if (sInstance == null) {
+            sInstance = new TextLayoutCache(DEFAULT_MAX_CHARS);
+        }
+        return sInstance;
+    }
+
+    public synchronized Measurement get(Key key) {
+        Measurement measurement = mCache.get(key);
+        if (measurement != null) {
+            mHitCount++;
+        } else {
+            mMissCount++;
+        }
+        return measurement;
+    }
+
+    public synchronized void put(Key key, Measurement measurement) {
+        Measurement previous = mCache.put(key, measurement);
+        if (previous == null) {
+            mChars += sizeOf(key);
+        }
+        trimToSize(mMaxChars);
+    }
+
+    public synchronized void clear() {
+        mCache.clear();
+        mChars = 0;
+    }
+
+    /**
+     * 同一文本需要在多个宽度下各缓存一份时，按宽度数放大缓存，只会增大
+     *
+     * @param count 每个文本缓存的宽度数
+     */
+    public synchronized void ensureWidthCount(int count) {
+        mMaxChars = Math.max(mMaxChars, mBaseMaxChars * count);
+    }
+
+    private int sizeOf(Key key) {
+        return ENTRY_OVERHEAD_CHARS + Math.min(key.textLength, mBaseMaxChars / 8);
+    }
+
+    private void trimToSize(int maxChars) {
+        Iterator<Map.Entry<Key, Measurement>> iterator = mCache.entrySet().iterator();
+        while (mChars > maxChars && iterator.hasNext()) {
+            Key key = iterator.next().getKey();
+            iterator.remove();
+            mChars -= sizeOf(key);
+            mEvictionCount++;
+        }
+    }
+
+    /**
+     * 缓存的条目数
+     */
+    public synchronized int size() {
+        return mCache.size();
+    }
+
+    /**
+     * 缓存的条目按文本字符数计算的总大小
+     */
+    public synchronized int sizeInChars() {
+        return mChars;
+    }
+
+    public synchronized int maxSizeInChars() {
+        return mMaxChars;
+    }
+
+    public synchronized int hitCount() {
+        return mHitCount;
+    }
+
+    public synchronized int missCount() {
+        return mMissCount;
+    }
+
+    public synchronized int evictionCount() {
+        return mEvictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "TextLayoutCache[entries=%d,chars=%d/%d,hits=%d,misses=%d]",
+                mCache.size(), mChars, mMaxChars, mHitCount, mMissCount);
+    }
+
+    /**
+     * 文本内容的64位哈希，按char计算，不复制文本；{@link MappedText}使用文件标识，不解码全部文本
+     */
+    static long hashText(CharSequence text) {
+        if (text == null) {
+            return FNV_OFFSET;
+        }
+        if (text instanceof MappedText) {
+            return hashText(((MappedText) text).getIdentity());
+        }
+        long hash = FNV_OFFSET;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            hash = (hash ^ text.charAt(i)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * 文本内容和改变字体度量的span折叠为32位的哈希，用于{@link ExpandStateStore}判断保存的测量结果是否属于同一文本
+     */
+    static int hashTextAndSpans(CharSequence text) {
+        long hash = hashText(text) * FNV_PRIME + hashMetricSpans(text);
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    /**
+     * 文本中改变字体度量的span的哈希，没有这样的span时为0
+     * <p>
+     * 常用的框架span按参数计算，相同参数的span得到相同的结果，图片span按图片的大小和对齐方式计算；
+     * 其他span按对象计算，只有同一个span对象才相同
+     */
+    static long hashMetricSpans(CharSequence text) {
+        if (!(text instanceof Spanned)) {
+            return 0;
+        }
+        Spanned spanned = (Spanned) text;
+        MetricAffectingSpan[] spans = spanned.getSpans(0, spanned.length(), MetricAffectingSpan.class);
+        long hash = 0;
+        for (MetricAffectingSpan span : spans) {
+            hash = hash * FNV_PRIME + spanned.getSpanStart(span);
+            hash = hash * FNV_PRIME + spanned.getSpanEnd(span);
+            hash = hash * FNV_PRIME + span.getClass().getName().hashCode();
+            hash = hash * FNV_PRIME + hashSpanParameters(span);
+        }
+        return hash;
+    }
+
+    private static int hashSpanParameters(MetricAffectingSpan span) {
+        if (span instanceof AbsoluteSizeSpan) {
+            AbsoluteSizeSpan sizeSpan = (AbsoluteSizeSpan) span;
+            return sizeSpan.getSize() * 2 + (sizeSpan.getDip() ? 1 : 0);
+        }
+        if (span instanceof RelativeSizeSpan) {
+            return Float.floatToIntBits(((RelativeSizeSpan) span).getSizeChange());
+        }
+        if (span instanceof ScaleXSpan) {
+            return Float.floatToIntBits(((ScaleXSpan) span).getScaleX());
+        }
+        if (span instanceof StyleSpan) {
+            return ((StyleSpan) span).getStyle();
+        }
+        if (span instanceof TypefaceSpan) {
+            String family = ((TypefaceSpan) span).getFamily();
+            return family != null ? family.hashCode() : 0;
+        }
+        if (span instanceof TextAppearanceSpan) {
+            TextAppearanceSpan appearanceSpan = (TextAppearanceSpan) span;
+            String family = appearanceSpan.getFamily();
+            return 31 * (31 * appearanceSpan.getTextSize() + appearanceSpan.getTextStyle())
+                    + (family != null ? family.hashCode() : 0);
+        }
+        if (span instanceof DynamicDrawableSpan) {
+            DynamicDrawableSpan drawableSpan = (DynamicDrawableSpan) span;
+            Drawable drawable = drawableSpan.getDrawable();
+            Rect bounds = drawable != null ? drawable.getBounds() : null;
+            return 31 * (bounds != null ? bounds.hashCode() : 0) + drawableSpan.getVerticalAlignment();
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1 && span instanceof LocaleSpan) {
+            Locale locale = ((LocaleSpan) span).getLocale();
+            return locale != null ? locale.hashCode() : 0;
+        }
+        // 上标、下标没有参数，由类名区分
+        if (span instanceof SuperscriptSpan || span instanceof SubscriptSpan) {
+            return 0;
+        }
+        return System.identityHashCode(span);
+    }
+
+    /**
+     * 根据TextView当前的画笔和布局设置生成缓存key
+     *
+     * @param text              文本内容
+     * @param textView          显示文本的TextView
+     * @param width             文本可用宽度
+     * @param maxCollapsedLines 折叠最大显示行数
+     */
+    public static Key obtainKey(CharSequence text, TextView textView, int width, int maxCollapsedLines) {
+        return obtainKey(text, textView, width, maxCollapsedLines, 0.0f);
+    }
+
+    /**
+     * 根据TextView当前的画笔和布局设置生成缓存key，与{@link TextMeasurer#obtainKey}得到的key相同
+     *
+     * @param text              文本内容
+     * @param textView          显示文本的TextView
+     * @param width             文本可用宽度
+     * @param maxCollapsedLines 折叠最大显示行数
+     * @param suffixWidth       折叠时末行后缀的宽度，没有后缀时为0
+     */
+    public static Key obtainKey(CharSequence text, TextView textView, int width, int maxCollapsedLines,
+                                float suffixWidth) {
+        return new Key(text, textView.getPaint(), width, textView.getLineHeight(),
+                TextMeasurer.getSpacingMult(textView), TextMeasurer.getSpacingAdd(textView),
+                TextMeasurer.isIncludePad(textView), TextMeasurer.getBreakStrategy(textView),
+                TextMeasurer.getHyphenationFrequency(textView),
+                textView.getCompoundPaddingTop() + textView.getCompoundPaddingBottom(), maxCollapsedLines,
+                suffixWidth);
+    }
+
+    /**
+     * 缓存key，文本、宽度和影响换行及高度的画笔、布局设置都相同时才认为相等
+     */
+    public static final class Key {
+        private final long textHash;
+        private final int textLength;
+        private final long spanHash;
+        private final int width;
+        private final float textSize;
+        private final float textScaleX;
+        private final float textSkewX;
+        private final float letterSpacing;
+        private final int flags;
+        private final Typeface typeface;
+        private final Locale textLocale;
+        private final String fontFeatureSettings;
+        private final int lineHeight;
+        private final float spacingMult;
+        private final float spacingAdd;
+        private final boolean isIncludePad;
+        private final int breakStrategy;
+        private final int hyphenationFrequency;
+        private final int verticalPadding;
+        private final int maxCollapsedLines;
+        private final float suffixWidth;
+        private final int hashCode;
+
+        public Key(CharSequence text, TextPaint paint, int width, int lineHeight, float spacingMult,
+                   float spacingAdd, boolean includePad, int breakStrategy, int hyphenationFrequency,
+                   int verticalPadding, int maxCollapsedLines, float suffixWidth) {
+            this.textHash = hashText(text);
+            this.textLength = text == null ? 0 : text.length();
+            this.spanHash = hashMetricSpans(text);
+            this.width = width;
+            this.textSize = paint.getTextSize();
+            this.textScaleX = paint.getTextScaleX();
+            this.textSkewX = paint.getTextSkewX();
+            this.flags = paint.getFlags();
+            this.typeface = paint.getTypeface();
+            this.textLocale = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1
+                    ? paint.getTextLocale() : null;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                this.letterSpacing = paint.getLetterSpacing();
+                this.fontFeatureSettings = paint.getFontFeatureSettings();
+            } else {
+                this.letterSpacing = 0.0f;
+                this.fontFeatureSettings = null;
+            }
+            this.lineHeight = lineHeight;
+            this.spacingMult = spacingMult;
+            this.spacingAdd = spacingAdd;
+            this.isIncludePad = includePad;
+            this.breakStrategy = breakStrategy;
+            this.hyphenationFrequency = hyphenationFrequency;
+            this.verticalPadding = verticalPadding;
+            this.maxCollapsedLines = maxCollapsedLines;
+            this.suffixWidth = suffixWidth;
+            this.hashCode = computeHashCode();
+        }
+
+        private int computeHashCode() {
+            int result = (int) (textHash ^ (textHash >>> 32));
+            result = 31 * result + textLength;
+            result = 31 * result + (int) (spanHash ^ (spanHash >>> 32));
+            result = 31 * result + width;
+            result = 31 * result + Float.floatToIntBits(textSize);
+            result = 31 * result + Float.floatToIntBits(textScaleX);
+            result = 31 * result + Float.floatToIntBits(textSkewX);
+            result = 31 * result + Float.floatToIntBits(letterSpacing);
+            result = 31 * result + flags;
+            result = 31 * result + (typeface != null ? typeface.hashCode() : 0);
+            result = 31 * result + (textLocale != null ? textLocale.hashCode() : 0);
+            result = 31 * result + (fontFeatureSettings != null ? fontFeatureSettings.hashCode() : 0);
+            result = 31 * result + lineHeight;
+            result = 31 * result + Float.floatToIntBits(spacingMult);
+            result = 31 * result + Float.floatToIntBits(spacingAdd);
+            result = 31 * result + (isIncludePad ? 1 : 0);
+            result = 31 * result + breakStrategy;
+            result = 31 * result + hyphenationFrequency;
+            result = 31 * result + verticalPadding;
+            result = 31 * result + maxCollapsedLines;
+            result = 31 * result + Float.floatToIntBits(suffixWidth);
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return hashCode == key.hashCode
+                    && textHash == key.textHash
+                    && textLength == key.textLength
+                    && spanHash == key.spanHash
+                    && width == key.width
+                    && Float.compare(key.textSize, textSize) == 0
+                    && Float.compare(key.textScaleX, textScaleX) == 0
+                    && Float.compare(key.textSkewX, textSkewX) == 0
+                    && Float.compare(key.letterSpacing, letterSpacing) == 0
+                    && flags == key.flags
+                    && lineHeight == key.lineHeight
+                    && Float.compare(key.spacingMult, spacingMult) == 0
+                    && Float.compare(key.spacingAdd, spacingAdd) == 0
+                    && isIncludePad == key.isIncludePad
+                    && breakStrategy == key.breakStrategy
+                    && hyphenationFrequency == key.hyphenationFrequency
+                    && verticalPadding == key.verticalPadding
+                    && maxCollapsedLines == key.maxCollapsedLines
+                    && Float.compare(key.suffixWidth, suffixWidth) == 0
+                    && (typeface != null ? typeface.equals(key.typeface) : key.typeface == null)
+                    && (textLocale != null ? textLocale.equals(key.textLocale) : key.textLocale == null)
+                    && (fontFeatureSettings != null ? fontFeatureSettings.equals(key.fontFeatureSettings)
+                    : key.fontFeatureSettings == null);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.chong.expandabletextview;
+
+import android.os.Build;
+import android.text.Layout;
+import android.text.Spanned;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.text.style.MetricAffectingSpan;
+import android.widget.TextView;
+
+import com.chong.expandabletextview.core.CollapseEngine;
+import com.chong.expandabletextview.core.LineMeasurer;
+import com.chong.expandabletextview.core.Measurement;
+import com.chong.expandabletextview.core.TextLines;
+
+/**
+ * 文本测量器，保存TextView或画笔在指定宽度下的画笔和行距设置
+ * <p>
+ * 创建时复制画笔，之后不再访问TextView，可以在后台线程中使用。折叠判断由{@link CollapseEngine}完成
+ */
+public class TextMeasurer implements LineMeasurer {
+
+    private final TextPaint mPaint;
+    private final int mWidth;
+    private final int mLineHeight;
+    private final float mSpacingMult;
+    private final float mSpacingAdd;
+    private final boolean isIncludePad;
+    private final int mVerticalPadding;
+    private final int mMaxCollapsedLines;
+    private final int mBreakStrategy;
+    private final int mHyphenationFrequency;
+    private final float mSuffixWidth;
+    private final CollapseEngine mEngine;
+    private AdvanceBounds mAdvanceBounds;
+
+    private TextMeasurer(TextPaint paint, int width, int lineHeight, float spacingMult, float spacingAdd,
+                         boolean includePad, int verticalPadding, int maxCollapsedLines, int breakStrategy,
+                         int hyphenationFrequency, float suffixWidth) {
+        mPaint = new TextPaint(paint);
+        mWidth = width;
+        mLineHeight = lineHeight;
+        mSpacingMult = spacingMult;
+        mSpacingAdd = spacingAdd;
+        isIncludePad = includePad;
+        mVerticalPadding = verticalPadding;
+        mMaxCollapsedLines = maxCollapsedLines;
+        mBreakStrategy = breakStrategy;
+        mHyphenationFrequency = hyphenationFrequency;
+        mSuffixWidth = suffixWidth;
+        mEngine = new CollapseEngine(this, maxCollapsedLines, suffixWidth);
+    }
+
+    /**
+     * 根据TextView当前设置创建测量器，需要在主线程调用
+     *
+     * @param textView          显示文本的TextView
+     * @param width             文本可用宽度
+     * @param maxCollapsedLines 折叠最大显示行数
+     */
+    public static TextMeasurer obtain(TextView textView, int width, int maxCollapsedLines) {
+        return obtain(textView, width, maxCollapsedLines, 0.0f);
+    }
+
+    /**
+     * 根据TextView当前设置创建测量器，折叠时在末行添加后缀，需要在主线程调用
+     *
+     * @param textView          显示文本的TextView
+     * @param width             文本可用宽度
+     * @param maxCollapsedLines 折叠最大显示行数
+     * @param suffixWidth       折叠时末行后缀的宽度
+     */
+    public static TextMeasurer obtain(TextView textView, int width, int maxCollapsedLines, float suffixWidth) {
+        return new TextMeasurer(textView.getPaint(), width, textView.getLineHeight(), getSpacingMult(textView),
+                getSpacingAdd(textView), isIncludePad(textView),
+                textView.getCompoundPaddingTop() + textView.getCompoundPaddingBottom(), maxCollapsedLines,
+                getBreakStrategy(textView), getHyphenationFrequency(textView), suffixWidth);
+    }
+
+    static float getSpacingMult(TextView textView) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN ? textView.getLineSpacingMultiplier() : 1.0f;
+    }
+
+    static float getSpacingAdd(TextView textView) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN ? textView.getLineSpacingExtra() : 0.0f;
+    }
+
+    static boolean isIncludePad(TextView textView) {
+        return Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN || textView.getIncludeFontPadding();
+    }
+
+    static int getBreakStrategy(TextView textView) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.M ? textView.getBreakStrategy() : 0;
+    }
+
+    static int getHyphenationFrequency(TextView textView) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.M ? textView.getHyphenationFrequency() : 0;
+    }
+
+    /**
+     * 根据画笔创建测量器，用于自己绘制文本的控件
+     *
+     * @param paint             绘制文本的画笔
+     * @param width             文本可用宽度
+     * @param spacingMult       行距倍数
+     * @param spacingAdd        行距增量
+     * @param maxCollapsedLines 折叠最大显示行数
+     */
+    public static TextMeasurer obtain(TextPaint paint, int width, float spacingMult, float spacingAdd,
+                                      int maxCollapsedLines) {
+        int lineHeight = Math.round(paint.getFontMetricsInt(null) * spacingMult + spacingAdd);
+        return new TextMeasurer(paint, width, lineHeight, spacingMult, spacingAdd, true, 0,
+                maxCollapsedLines, 0, 0, 0.0f);
+    }
+
+    @Override
+    public int getWidth() {
+        return mWidth;
+    }
+
+    @Override
+    public int getVerticalPadding() {
+        return mVerticalPadding;
+    }
+
+    @Override
+    public float getMinCharWidth() {
+        return mPaint.measureText("i");
+    }
+
+    @Override
+    public float getMaxAdvance(char c) {
+        if (mAdvanceBounds == null) {
+            mAdvanceBounds = AdvanceBounds.obtain(mPaint);
+        }
+        return mAdvanceBounds.get(c);
+    }
+
+    /**
+     * 只有简单换行策略是贪心的，高质量和均衡换行会根据后面的文本调整前面的换行位置
+     */
+    @Override
+    public boolean isGreedy() {
+        return Build.VERSION.SDK_INT < Build.VERSION_CODES.M || mBreakStrategy == Layout.BREAK_STRATEGY_SIMPLE;
+    }
+
+    @Override
+    public TextLines layout(CharSequence text, int end) {
+        return new LayoutLines(createLayout(text, end));
+    }
+
+    public int getMaxCollapsedLines() {
+        return mMaxCollapsedLines;
+    }
+
+    /**
+     * 生成与{@link TextLayoutCache#obtainKey}相同的缓存key
+     */
+    public TextLayoutCache.Key obtainKey(CharSequence text) {
+        return new TextLayoutCache.Key(text, mPaint, mWidth, mLineHeight, mSpacingMult, mSpacingAdd, isIncludePad,
+                mBreakStrategy, mHyphenationFrequency, mVerticalPadding, mMaxCollapsedLines, mSuffixWidth);
+    }
+
+    /**
+     * 对全部文本进行换行测量，测量过程中文本不能被修改
+     */
+    public Measurement measure(CharSequence text) {
+        return mEngine.measure(text);
+    }
+
+    /**
+     * 只测量折叠行数再多一行的文本，用于折叠状态，见{@link CollapseEngine#measureCollapsed}
+     * <p>
+     * 简单换行策略（API 23以下或breakStrategy为simple）时布局文本前缀；其他策略（API 23开始的默认策略）
+     * 布局到前缀所在段落的结尾，只有一个很长的段落时测量全部文本
+     */
+    public Measurement measureCollapsed(CharSequence text) {
+        return mEngine.measureCollapsed(text);
+    }
+
+    /**
+     * 不布局判断文本是否一定不需要折叠，见{@link CollapseEngine#measureWithoutLayout}
+     * <p>
+     * 文本中有改变字体大小或替换内容的span时宽度无法确定，返回null
+     */
+    public Measurement measureWithoutLayout(CharSequence text) {
+        if (text instanceof Spanned
+                && ((Spanned) text).getSpans(0, text.length(), MetricAffectingSpan.class).length > 0) {
+            return null;
+        }
+        return mEngine.measureWithoutLayout(text);
+    }
+
+    /**
+     * 先查询缓存，没有可用的缓存时测量并放入缓存
+     *
+     * @param collapsedOnly 是否只需要折叠状态的测量结果
+     */
+    public Measurement measureCached(CharSequence text, boolean collapsedOnly) {
+        TextLayoutCache.Key key = obtainKey(text);
+        TextLayoutCache cache = TextLayoutCache.getInstance();
+        Measurement measurement = cache.get(key);
+        if (measurement == null || !(collapsedOnly || measurement.isComplete())) {
+            measurement = collapsedOnly ? measureCollapsed(text) : measure(text);
+            cache.put(key, measurement);
+        }
+        return measurement;
+    }
+
+    /**
+     * 对文本[0, end)部分进行布局，不复制文本
+     */
+    public Layout createLayout(CharSequence text, int end) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            return StaticLayout.Builder.obtain(text, 0, end, mPaint, mWidth)
+                    .setLineSpacing(mSpacingAdd, mSpacingMult)
+                    .setIncludePad(isIncludePad)
+                    .setBreakStrategy(mBreakStrategy)
+                    .setHyphenationFrequency(mHyphenationFrequency)
+                    .build();
+        }
+        return new StaticLayout(text, 0, end, mPaint, mWidth, Layout.Alignment.ALIGN_NORMAL,
+                mSpacingMult, mSpacingAdd, isIncludePad);
+    }
+
+    /**
+     * 在已经计算好的布局上二分查找，得到指定行内宽度不超过availableWidth的最后位置
+     *
+     * @param layout         文本布局
+     * @param line           查找的行
+     * @param availableWidth 可用宽度
+     * @return 截断位置，不会超过该行可见文本的结尾
+     */
+    public static int findEllipsisEnd(Layout layout, int line, float availableWidth) {
+        return CollapseEngine.findEllipsisEnd(new LayoutLines(layout), line, availableWidth);
+    }
+
+    /**
+     * 估算折叠行数再多一行最多能显示的字符数，按最窄字符宽度计算
+     */
+    public int estimateCollapsedLength(CharSequence text) {
+        return mEngine.estimateCollapsedLength(text);
+    }
+}
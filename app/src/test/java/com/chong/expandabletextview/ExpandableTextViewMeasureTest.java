@@ -0,0 +1,341 @@
+package com.chong.expandabletextview;
+
+import android.content.Context;
+import android.text.Layout;
+import android.util.SparseBooleanArray;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageButton;
+import android.widget.LinearLayout;
+import android.widget.ScrollView;
+import android.widget.TextView;
+
+import com.chong.expandabletextview.core.Measurement;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.util.Scheduler;
+
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 每次绑定时子View的测量次数
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class ExpandableTextViewMeasureTest {
+
+    private static final String LONG_TEXT;
+    private static final int MAX_ANIMATION_FRAMES = 200;
+
+    static {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            builder.append("Line ").append(i).append('\n');
+        }
+        LONG_TEXT = builder.toString();
+    }
+
+    private ExpandableTextView mView;
+    private CountingTextView mContent;
+    private CountingImageButton mButton;
+    private SparseBooleanArray mCollapsedStatus;
+
+    @Before
+    public void setUp() {
+        TextLayoutCache.getInstance().clear();
+        Context context = RuntimeEnvironment.application;
+        mView = new ExpandableTextView(context);
+        mView.setLayoutParams(new ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT,
+                ViewGroup.LayoutParams.WRAP_CONTENT));
+        mContent = new CountingTextView(context);
+        mContent.setId(R.id.tv_expandable_text);
+        mView.addView(mContent, new LinearLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT,
+                ViewGroup.LayoutParams.WRAP_CONTENT));
+        mButton = new CountingImageButton(context);
+        mButton.setId(R.id.expand_collapse);
+        mView.addView(mButton, new LinearLayout.LayoutParams(ViewGroup.LayoutParams.WRAP_CONTENT,
+                ViewGroup.LayoutParams.WRAP_CONTENT));
+        mView.onFinishInflate();
+        mCollapsedStatus = new SparseBooleanArray();
+    }
+
+    @Test
+    public void firstBind_measuresEachChildAtMostTwice() {
+        bind(LONG_TEXT);
+        assertTrue("content measured " + mContent.measureCount, mContent.measureCount <= 2);
+        assertTrue("toggle measured " + mButton.measureCount, mButton.measureCount <= 1);
+    }
+
+    @Test
+    public void rebindSameText_measuresEachChildOnce() {
+        bind(LONG_TEXT);
+        mContent.measureCount = 0;
+        mButton.measureCount = 0;
+
+        bind(LONG_TEXT);
+        assertEquals(1, mContent.measureCount);
+        assertTrue("toggle measured " + mButton.measureCount, mButton.measureCount <= 1);
+        assertEquals(1, TextLayoutCache.getInstance().size());
+    }
+
+    @Test
+    public void manyRebinds_measureCountStaysConstant() {
+        bind(LONG_TEXT);
+        mContent.measureCount = 0;
+        for (int i = 0; i < 100; i++) {
+            bind(LONG_TEXT);
+        }
+        assertEquals(100, mContent.measureCount);
+    }
+
+    @Test
+    public void syncAfterBulkExpand_measuresContentOnce() {
+        LinearLayout parent = new LinearLayout(RuntimeEnvironment.application);
+        parent.addView(mView);
+        bind(LONG_TEXT);
+        mContent.measureCount = 0;
+
+        mCollapsedStatus.put(0, false);
+        assertEquals(1, ExpandableTextView.syncCollapsedStates(parent));
+        assertEquals(0, ExpandableTextView.syncCollapsedStates(parent));
+        measureAndLayout();
+        assertTrue("content measured " + mContent.measureCount, mContent.measureCount <= 2);
+        assertEquals(Integer.MAX_VALUE, mContent.getMaxLines());
+    }
+
+    @Test
+    public void toggleAnimation_animatesContentHeightAndLaysOutTextOnce() {
+        LinearLayout parent = new LinearLayout(RuntimeEnvironment.application);
+        parent.setOrientation(LinearLayout.VERTICAL);
+        parent.addView(mView);
+        View below = new View(RuntimeEnvironment.application);
+        below.setTranslationY(12f);
+        parent.addView(below, new LinearLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, 100));
+        mView.setText(LONG_TEXT, mCollapsedStatus, 0);
+        layout(parent);
+        int collapsedHeight = mContent.getHeight();
+
+        // 展开：开始时按全部文本布局一次，从原来的高度开始逐帧增加内容的高度
+        mButton.performClick();
+        layout(parent);
+        // 跳过按展开后的高度绘制的一帧
+        assertTrue(mView.getViewTreeObserver().dispatchOnPreDraw());
+        layout(parent);
+        assertEquals(collapsedHeight, mContent.getHeight());
+        Layout textLayout = mContent.getLayout();
+        Scheduler scheduler = Robolectric.getForegroundThreadScheduler();
+        scheduler.advanceToNextPostedRunnable();
+        scheduler.advanceToNextPostedRunnable();
+        layout(parent);
+        assertTrue("content height " + mContent.getHeight(), mContent.getHeight() >= collapsedHeight);
+        // 之后的控件由外层按新的高度布局，不平移
+        assertEquals(mView.getBottom(), below.getTop());
+        assertEquals(12f, below.getTranslationY(), 0f);
+        assertTrue(runAnimationFrames(parent) > 1);
+        assertSame(textLayout, mContent.getLayout());
+        assertEquals(ViewGroup.LayoutParams.WRAP_CONTENT, mContent.getLayoutParams().height);
+        assertTrue(mContent.getHeight() > collapsedHeight);
+        assertEquals(mView.getBottom(), below.getTop());
+
+        // 折叠：动画中不重新换行，结束后按折叠状态布局一次
+        mButton.performClick();
+        assertTrue(runAnimationFrames(parent) > 1);
+        assertEquals(ViewGroup.LayoutParams.WRAP_CONTENT, mContent.getLayoutParams().height);
+        assertEquals(collapsedHeight, mContent.getHeight());
+        assertEquals(mView.getBottom(), below.getTop());
+        assertEquals(12f, below.getTranslationY(), 0f);
+    }
+
+    @Test
+    public void append_collapsesWhenCrossingLimitAndThenSkipsLayout() {
+        bind("Line\n");
+        for (int i = 0; i < 40 && mButton.getVisibility() != View.VISIBLE; i++) {
+            mView.append("Line " + i + "\n");
+            measureAndLayout();
+        }
+        assertEquals(View.VISIBLE, mButton.getVisibility());
+        int collapsedHeight = mContent.getHeight();
+
+        // 已经折叠后追加的内容不显示，不需要重新布局
+        mContent.measureCount = 0;
+        for (int i = 0; i < 100; i++) {
+            mView.append("More " + i + "\n");
+            assertFalse(mView.isLayoutRequested());
+        }
+        measureAndLayout();
+        assertEquals(0, mContent.measureCount);
+        assertEquals(collapsedHeight, mContent.getHeight());
+        assertTrue(mView.getText().toString().endsWith("More 99\n"));
+    }
+
+    @Test
+    public void appendWhileExpanded_sharesBufferAndUpdatesLayoutIncrementally() {
+        bind(LONG_TEXT);
+        mButton.performClick();
+        measureAndLayout();
+        mView.append("More 0\n");
+        measureAndLayout();
+        // TextView与ExpandableTextView共用追加的缓冲区
+        assertSame(mView.getText(), mContent.getText());
+
+        // 之后追加的内容只更新已有的布局，每次追加最多测量一次
+        Layout layout = mContent.getLayout();
+        mContent.measureCount = 0;
+        for (int i = 1; i <= 100; i++) {
+            mView.append("More " + i + "\n");
+            measureAndLayout();
+        }
+        assertSame(layout, mContent.getLayout());
+        assertTrue("content measured " + mContent.measureCount, mContent.measureCount <= 100);
+        assertSame(mView.getText(), mContent.getText());
+        assertEquals(LONG_TEXT.split("\n").length + 101, mContent.getLineCount() - 1);
+    }
+
+    @Test
+    public void expandVeryLongText_laysOutOnlyVisibleChunks() {
+        ScrollView parent = new ScrollView(RuntimeEnvironment.application);
+        parent.addView(mView);
+        mContent.setLineSpacing(20f, 1f);
+        mView.setVirtualizeLength(10000);
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            builder.append("Paragraph ").append(i).append(" of a very long expanded text\n");
+        }
+        mCollapsedStatus.put(0, false);
+        mView.setText(builder, mCollapsedStatus, 0);
+        parent.measure(View.MeasureSpec.makeMeasureSpec(480, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(800, View.MeasureSpec.EXACTLY));
+        parent.layout(0, 0, 480, 800);
+
+        // 展开时mTvContent不对文本布局，只布局可见区域内的块
+        ChunkedTextView chunkView = (ChunkedTextView) mView.getChildAt(mView.indexOfChild(mContent) + 1);
+        assertEquals(0, mContent.measureCount);
+        assertEquals(View.GONE, mContent.getVisibility());
+        assertTrue(chunkView.getHeight() > 800);
+        assertTrue("chunks " + chunkView.getChunkCount(), chunkView.getChunkCount() > 50);
+        assertTrue("laid out " + chunkView.getLaidOutChunkCount(), chunkView.getLaidOutChunkCount() <= 2);
+
+        // 折叠后恢复由mTvContent显示，释放分块
+        mButton.performClick();
+        layout(parent);
+        assertEquals(View.VISIBLE, mContent.getVisibility());
+        assertEquals(View.GONE, chunkView.getVisibility());
+        assertEquals(0, chunkView.getLaidOutChunkCount());
+    }
+
+    @Test
+    @Config(sdk = 23)
+    public void measureCollapsed_defaultStrategyOnMarshmallowLaysOutOnlyCollapsedParagraphs() {
+        TextView textView = new TextView(RuntimeEnvironment.application);
+        // M开始TextView默认使用高质量换行
+        assertEquals(Layout.BREAK_STRATEGY_HIGH_QUALITY, textView.getBreakStrategy());
+        TextMeasurer measurer = TextMeasurer.obtain(textView, 480, 3);
+        assertFalse(measurer.isGreedy());
+
+        Measurement collapsed = measurer.measureCollapsed(LONG_TEXT);
+        // 只对前几个段落布局，结果不包含完整高度
+        assertFalse(collapsed.isComplete());
+        Measurement full = measurer.measure(LONG_TEXT);
+        assertEquals(full.collapsedEnd, collapsed.collapsedEnd);
+        assertEquals(full.collapsedHeight, collapsed.collapsedHeight);
+    }
+
+    @Test
+    public void widthBuckets_widthChangeUsesPrecomputedMeasurement() {
+        mView.setMeasureExecutor(new Executor() {
+
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+        mView.setWidthBuckets(480, 800);
+        mView.setText(LONG_TEXT, mCollapsedStatus, 0);
+        int misses = TextLayoutCache.getInstance().missCount();
+        layout(mView, 480);
+        assertEquals(View.VISIBLE, mButton.getVisibility());
+
+        // 宽度改变后重新判断折叠，使用提前测量的结果，不再换行测量
+        mContent.measureCount = 0;
+        layout(mView, 800);
+        assertEquals(misses, TextLayoutCache.getInstance().missCount());
+        assertEquals(1, mContent.measureCount);
+        assertEquals(800, mView.getWidth());
+        assertEquals(View.VISIBLE, mButton.getVisibility());
+    }
+
+    /**
+     * 执行动画的所有帧，每帧之后像绘制流程一样只在需要时重新布局
+     *
+     * @return 执行的帧数
+     */
+    private int runAnimationFrames(ViewGroup parent) {
+        Scheduler scheduler = Robolectric.getForegroundThreadScheduler();
+        int frames = 0;
+        for (; frames < MAX_ANIMATION_FRAMES && scheduler.size() > 0; frames++) {
+            scheduler.advanceToNextPostedRunnable();
+            if (parent.isLayoutRequested()) {
+                layout(parent);
+            }
+        }
+        return frames;
+    }
+
+    private void layout(View view) {
+        layout(view, 480);
+    }
+
+    private void layout(View view, int width) {
+        view.measure(View.MeasureSpec.makeMeasureSpec(width, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED));
+        view.layout(0, 0, view.getMeasuredWidth(), view.getMeasuredHeight());
+    }
+
+    private void bind(CharSequence text) {
+        mView.setText(text, mCollapsedStatus, 0);
+        measureAndLayout();
+    }
+
+    private void measureAndLayout() {
+        layout(mView);
+    }
+
+    private static class CountingTextView extends TextView {
+        int measureCount;
+
+        CountingTextView(Context context) {
+            super(context);
+        }
+
+        @Override
+        protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+            measureCount++;
+            super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+        }
+    }
+
+    private static class CountingImageButton extends ImageButton {
+        int measureCount;
+
+        CountingImageButton(Context context) {
+            super(context);
+        }
+
+        @Override
+        protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+            measureCount++;
+            super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+        }
+    }
+}
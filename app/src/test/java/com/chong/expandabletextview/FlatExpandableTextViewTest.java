@@ -0,0 +1,69 @@
+package com.chong.expandabletextview;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.view.View;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 展开/折叠后绘制的文本布局
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class FlatExpandableTextViewTest {
+
+    private static final int LINE_COUNT = 20;
+    private static final int WIDTH = 480;
+
+    private FlatExpandableTextView mView;
+    private Canvas mCanvas;
+
+    @Before
+    public void setUp() {
+        TextLayoutCache.getInstance().clear();
+        mView = new FlatExpandableTextView(RuntimeEnvironment.application);
+        mCanvas = new Canvas(Bitmap.createBitmap(WIDTH, 800, Bitmap.Config.ARGB_8888));
+    }
+
+    @Test
+    public void expandAfterCollapsedDraw_drawsFullLayout() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < LINE_COUNT; i++) {
+            if (i > 0) {
+                builder.append('\n');
+            }
+            builder.append("Line ").append(i);
+        }
+        mView.setText(builder.toString());
+        measureAndDraw();
+        assertTrue(mView.isCollapsed());
+        int collapsedLines = mView.getLayout().getLineCount();
+        assertTrue("collapsed lines " + collapsedLines, collapsedLines < LINE_COUNT);
+
+        mView.toggle();
+        measureAndDraw();
+        assertFalse(mView.isCollapsed());
+        assertEquals(LINE_COUNT, mView.getLayout().getLineCount());
+
+        mView.toggle();
+        measureAndDraw();
+        assertEquals(collapsedLines, mView.getLayout().getLineCount());
+    }
+
+    private void measureAndDraw() {
+        mView.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED));
+        mView.layout(0, 0, mView.getMeasuredWidth(), mView.getMeasuredHeight());
+        mView.draw(mCanvas);
+    }
+}
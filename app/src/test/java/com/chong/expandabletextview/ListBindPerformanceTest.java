@@ -0,0 +1,502 @@
+package com.chong.expandabletextview;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.SpannedString;
+import android.text.style.URLSpan;
+import android.util.AttributeSet;
+import android.util.SparseBooleanArray;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.widget.FrameLayout;
+import android.widget.TextView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.util.Scheduler;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 在列表中绑定和展开/折叠时的性能回归测试
+ * <p>
+ * 按列表复用View的方式绑定数千行合成文本，统计每次绑定和每次展开/折叠的onMeasure次数、requestLayout次数、
+ * 启动的线程数和分配的内存，超过perf_baselines.properties中记录的基线加上容差时测试失败。
+ * 容差由基线文件中的tolerance指定，分配的内存受JIT和GC影响较大，使用单独的tolerance.allocatedBytes。
+ * 使用-Dperf.record=true运行时，将本次结果直接写入src/test/resources中的基线文件，检查后随代码提交；
+ * 基线只能由实际运行记录，不能手工填写，改变了测量、布局或分配次数的提交需要同时重新记录。
+ * 基线文件中没有某项的记录时测试失败
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class ListBindPerformanceTest {
+
+    private static final String BASELINES = "perf_baselines.properties";
+    /**
+     * 记录基线时写入的文件，相对于app模块目录
+     */
+    private static final String BASELINES_SOURCE = "src/test/resources/com/chong/expandabletextview/" + BASELINES;
+    private static final String TOLERANCE = "tolerance";
+    /**
+     * 绑定的行数
+     */
+    private static final int ROWS = 2000;
+    /**
+     * 预热的行数，不统计资源加载和首次创建View的开销
+     */
+    private static final int WARMUP_ROWS = 100;
+    /**
+     * 复用的View数量，相当于一屏的行数
+     */
+    private static final int RECYCLED_VIEWS = 12;
+    private static final int WIDTH = 1080;
+    private static final int MAX_ANIMATION_FRAMES = 10000;
+
+    private static int sMeasureCount;
+    private static int sRequestLayoutCount;
+
+    private Context mContext;
+    private FrameLayout mParent;
+    private String[] mTexts;
+    private Properties mBaselines;
+    private Properties mResults;
+
+    @Before
+    public void setUp() throws IOException {
+        TextLayoutCache.getInstance().clear();
+        mContext = new CountingContext(RuntimeEnvironment.application);
+        mParent = new FrameLayout(mContext);
+        mTexts = createTexts(ROWS);
+        mBaselines = new Properties();
+        InputStream in = getClass().getResourceAsStream(BASELINES);
+        assertNotNull("missing " + BASELINES, in);
+        try {
+            mBaselines.load(in);
+        } finally {
+            in.close();
+        }
+        mResults = new Properties();
+    }
+
+    @Test
+    public void expandableTextView() throws IOException {
+        SampleTextListAdapter adapter = new SampleTextListAdapter(mContext, mTexts);
+        View[] views = new View[RECYCLED_VIEWS];
+        Counter bind = new Counter();
+        Counter toggle = new Counter();
+        for (int position = 0; position < ROWS; position++) {
+            boolean counted = position >= WARMUP_ROWS;
+            int slot = position % RECYCLED_VIEWS;
+
+            bind.start(counted);
+            views[slot] = adapter.getView(position, views[slot], mParent);
+            measureAndLayout(views[slot]);
+            bind.stop(counted);
+
+            View state = views[slot].findViewById(R.id.tv_expand_collapse);
+            if (state.getVisibility() == View.VISIBLE) {
+                toggle.start(counted);
+                state.performClick();
+                measureAndLayout(views[slot]);
+                toggle.stop(counted);
+            }
+        }
+        check("ExpandableTextView", bind, toggle);
+    }
+
+    @Test
+    public void expandableTextView2() throws IOException {
+        SparseBooleanArray collapsedStatus = new SparseBooleanArray();
+        ExpandableTextView2[] views = new ExpandableTextView2[RECYCLED_VIEWS];
+        Counter bind = new Counter();
+        Counter toggle = new Counter();
+        for (int position = 0; position < ROWS; position++) {
+            boolean counted = position >= WARMUP_ROWS;
+            int slot = position % RECYCLED_VIEWS;
+
+            bind.start(counted);
+            if (views[slot] == null) {
+                views[slot] = new CountingExpandableTextView2(mContext, null);
+            }
+            views[slot].setText(mTexts[position], collapsedStatus, position);
+            measureAndLayout(views[slot]);
+            // 没有窗口时不会绘制，手动分发绘制前的回调
+            views[slot].findViewById(R.id.tv_expandable).getViewTreeObserver().dispatchOnPreDraw();
+            measureAndLayout(views[slot]);
+            bind.stop(counted);
+
+            View toggleLayout = views[slot].findViewById(R.id.rl_expandable);
+            if (toggleLayout != null && toggleLayout.getVisibility() == View.VISIBLE) {
+                toggle.start(counted);
+                toggleLayout.performClick();
+                runAnimationFrames();
+                measureAndLayout(views[slot]);
+                toggle.stop(counted);
+            }
+        }
+        check("ExpandableTextView2", bind, toggle);
+    }
+
+    @Test
+    public void expandableTextView2_bindsSpannedTextWithoutCopy() {
+        SpannableStringBuilder builder = new SpannableStringBuilder();
+        for (String row : mTexts) {
+            builder.append(row).append('\n');
+        }
+        builder.setSpan(new URLSpan("https://github.com"), 0, 10, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        SpannedString text = new SpannedString(builder);
+        ExpandableTextView2 view = new ExpandableTextView2(mContext, null);
+        view.setText(mTexts[0]);
+        measureAndLayout(view);
+        TextView textView = (TextView) view.findViewById(R.id.tv_expandable);
+
+        // 折叠时只复制折叠部分，分配的内存远小于复制一次全部文本
+        Counter bind = new Counter();
+        bind.start(true);
+        view.setText(text);
+        bind.stop(true);
+        assertSame(text, view.getTextContent());
+        assertTrue(textView.getText().length() < text.length());
+        assertEquals(1, ((Spanned) textView.getText()).getSpans(0, 10, URLSpan.class).length);
+        assertTrue("thread allocation counting unsupported", bind.isAllocationCounted());
+        assertTrue("allocated " + bind.allocatedBytes, bind.allocatedBytes < text.length());
+
+        // 展开时TextView直接使用不可变的文本
+        expand(view, textView);
+        assertSame(text, textView.getText());
+    }
+
+    @Test
+    public void expandableTextView2_doesNotTakeOverMutableText() {
+        SpannableStringBuilder text = new SpannableStringBuilder();
+        for (int i = 0; i < 40; i++) {
+            text.append("Line ").append(String.valueOf(i)).append('\n');
+        }
+        ExpandableTextView2 view = new ExpandableTextView2(mContext, null);
+        view.setText(mTexts[0]);
+        measureAndLayout(view);
+        TextView textView = (TextView) view.findViewById(R.id.tv_expandable);
+
+        view.setText(text);
+        expand(view, textView);
+        // TextView使用自己的副本，不在调用方的文本中添加监听
+        assertNotSame(text, textView.getText());
+        assertEquals(text.toString(), textView.getText().toString());
+        assertEquals(0, text.getSpans(0, text.length(), Object.class).length);
+    }
+
+    /**
+     * 完成折叠判断后点击展开
+     */
+    private void expand(ExpandableTextView2 view, TextView textView) {
+        textView.getViewTreeObserver().dispatchOnPreDraw();
+        measureAndLayout(view);
+        view.findViewById(R.id.rl_expandable).performClick();
+    }
+
+    private void measureAndLayout(View view) {
+        view.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED));
+        view.layout(0, 0, view.getMeasuredWidth(), view.getMeasuredHeight());
+    }
+
+    /**
+     * 执行动画的所有帧
+     */
+    private void runAnimationFrames() {
+        Scheduler scheduler = Robolectric.getForegroundThreadScheduler();
+        for (int i = 0; i < MAX_ANIMATION_FRAMES && scheduler.size() > 0; i++) {
+            scheduler.advanceToNextPostedRunnable();
+        }
+    }
+
+    private void check(String widget, Counter bind, Counter toggle) throws IOException {
+        assertTrue(widget + " bound no rows", bind.count > 0);
+        assertTrue(widget + " toggled no rows", toggle.count > 0);
+        StringBuilder failures = new StringBuilder();
+        bind.check(widget + ".bind", failures);
+        toggle.check(widget + ".toggle", failures);
+        if (Boolean.getBoolean("perf.record")) {
+            // 记录模式只写入本次结果，不和旧的基线比较
+            record(widget);
+            return;
+        }
+        assertTrue("exceeded baselines in " + BASELINES + ":" + failures, failures.length() == 0);
+    }
+
+    /**
+     * 合并本次结果写入基线文件，保留文件开头的注释，按key排序
+     */
+    private void record(String widget) throws IOException {
+        File file = new File(BASELINES_SOURCE);
+        StringBuilder comments = new StringBuilder();
+        Properties properties = new Properties();
+        if (file.exists()) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "ISO-8859-1"));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null && line.startsWith("#")) {
+                    comments.append(line).append('\n');
+                }
+            } finally {
+                reader.close();
+            }
+            InputStream in = new FileInputStream(file);
+            try {
+                properties.load(in);
+            } finally {
+                in.close();
+            }
+        }
+        properties.putAll(mResults);
+        List<String> keys = new ArrayList<>(properties.stringPropertyNames());
+        Collections.sort(keys);
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "ISO-8859-1");
+        try {
+            out.write(comments.toString());
+            for (String key : keys) {
+                out.write(key + '=' + properties.getProperty(key) + '\n');
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * 生成长度从一行到数十行不等的文本，包含中英文
+     */
+    private static String[] createTexts(int count) {
+        Random random = new Random(42);
+        String[] words = {"expandable", "text", "view", "列表", "展开", "折叠", "measure", "layout", "绘制", "a"};
+        String[] texts = new String[count];
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            builder.setLength(0);
+            int length = 1 + random.nextInt(i % 3 == 0 ? 400 : 40);
+            for (int j = 0; j < length; j++) {
+                builder.append(words[random.nextInt(words.length)]).append(j % 17 == 16 ? '\n' : ' ');
+            }
+            texts[i] = builder.toString();
+        }
+        return texts;
+    }
+
+    /**
+     * 统计一类操作的平均次数
+     */
+    private class Counter {
+        private final ThreadMXBean mThreadBean = ManagementFactory.getThreadMXBean();
+        int count;
+        long measures;
+        long requestLayouts;
+        long threads;
+        long allocatedBytes;
+        private int mStartMeasures;
+        private int mStartRequestLayouts;
+        private long mStartThreads;
+        private long mStartBytes;
+
+        void start(boolean counted) {
+            if (!counted) {
+                return;
+            }
+            mStartMeasures = sMeasureCount;
+            mStartRequestLayouts = sRequestLayoutCount;
+            mStartThreads = mThreadBean.getTotalStartedThreadCount();
+            mStartBytes = getAllocatedBytes();
+        }
+
+        void stop(boolean counted) {
+            if (!counted) {
+                return;
+            }
+            long bytes = getAllocatedBytes();
+            count++;
+            measures += sMeasureCount - mStartMeasures;
+            requestLayouts += sRequestLayoutCount - mStartRequestLayouts;
+            threads += mThreadBean.getTotalStartedThreadCount() - mStartThreads;
+            if (bytes >= 0 && mStartBytes >= 0) {
+                allocatedBytes += bytes - mStartBytes;
+            }
+        }
+
+        void check(String name, StringBuilder failures) {
+            checkValue(name + ".measure", (double) measures / count, failures);
+            checkValue(name + ".requestLayout", (double) requestLayouts / count, failures);
+            // 线程数按总数统计，不允许任何一次绑定启动线程
+            checkValue(name + ".threads", threads, failures);
+            if (isAllocationCounted()) {
+                checkValue(name + ".allocatedBytes", (double) allocatedBytes / count, failures);
+            }
+        }
+
+        private void checkValue(String key, double value, StringBuilder failures) {
+            mResults.setProperty(key, String.format(Locale.US, "%.1f", value));
+            String baseline = mBaselines.getProperty(key);
+            if (baseline == null) {
+                failures.append("\n  ").append(key).append(": no recorded baseline, measured ").append(value)
+                        .append(", record with -Dperf.record=true");
+                return;
+            }
+            String metric = key.substring(key.lastIndexOf('.') + 1);
+            double tolerance = Double.parseDouble(mBaselines.getProperty(TOLERANCE + '.' + metric,
+                    mBaselines.getProperty(TOLERANCE, "0")));
+            double limit = Double.parseDouble(baseline) * (1 + tolerance);
+            if (value > limit) {
+                failures.append("\n  ").append(key).append(": ").append(value).append(" > ").append(baseline)
+                        .append(String.format(Locale.US, " +%.0f%%", tolerance * 100));
+            }
+        }
+
+        /**
+         * JVM是否支持统计当前线程分配的内存
+         */
+        boolean isAllocationCounted() {
+            return getAllocatedBytes() >= 0;
+        }
+
+        /**
+         * 当前线程已分配的字节数，JVM不支持时返回-1
+         */
+        private long getAllocatedBytes() {
+            if (mThreadBean instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) mThreadBean;
+                if (bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled()) {
+                    return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * 布局中的TextView和ExpandableTextView替换为计数的子类
+     */
+    private static class CountingContext extends ContextWrapper {
+        private LayoutInflater mInflater;
+
+        CountingContext(Context base) {
+            super(base);
+        }
+
+        @Override
+        public Object getSystemService(String name) {
+            if (!LAYOUT_INFLATER_SERVICE.equals(name)) {
+                return super.getSystemService(name);
+            }
+            if (mInflater == null) {
+                mInflater = LayoutInflater.from(getBaseContext()).cloneInContext(this);
+                mInflater.setFactory2(new LayoutInflater.Factory2() {
+
+                    @Override
+                    public View onCreateView(View parent, String name, Context context, AttributeSet attrs) {
+                        return onCreateView(name, context, attrs);
+                    }
+
+                    @Override
+                    public View onCreateView(String name, Context context, AttributeSet attrs) {
+                        if ("TextView".equals(name)) {
+                            return new CountingTextView(context, attrs);
+                        }
+                        if (ExpandableTextView.class.getName().equals(name)) {
+                            return new CountingExpandableTextView(context, attrs);
+                        }
+                        return null;
+                    }
+                });
+            }
+            return mInflater;
+        }
+    }
+
+    private static class CountingTextView extends TextView {
+
+        CountingTextView(Context context, AttributeSet attrs) {
+            super(context, attrs);
+        }
+
+        @Override
+        protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+            sMeasureCount++;
+            super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+        }
+
+        @Override
+        public void requestLayout() {
+            sRequestLayoutCount++;
+            super.requestLayout();
+        }
+    }
+
+    private static class CountingExpandableTextView extends ExpandableTextView {
+
+        CountingExpandableTextView(Context context, AttributeSet attrs) {
+            super(context, attrs);
+        }
+
+        @Override
+        protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+            sMeasureCount++;
+            super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+        }
+
+        @Override
+        public void requestLayout() {
+            sRequestLayoutCount++;
+            super.requestLayout();
+        }
+    }
+
+    private static class CountingExpandableTextView2 extends ExpandableTextView2 {
+
+        CountingExpandableTextView2(Context context, AttributeSet attrs) {
+            super(context, attrs);
+        }
+
+        @Override
+        protected TextView onCreateTextView(Context context) {
+            return new CountingTextView(context, null);
+        }
+
+        @Override
+        protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+            sMeasureCount++;
+            super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+        }
+
+        @Override
+        public void requestLayout() {
+            sRequestLayoutCount++;
+            super.requestLayout();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.chong.expandabletextview;
+
+import android.graphics.Typeface;
+import android.text.SpannableString;
+import android.text.Spanned;
+import android.text.style.StyleSpan;
+import android.view.LayoutInflater;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * 解析结果的缓存、合并请求和过期结果的丢弃
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class RichTextPipelineTest {
+
+    private final ArrayList<Runnable> mTasks = new ArrayList<>();
+    private int mParseCount;
+    private RichTextPipeline mPipeline;
+    private ExpandStateStore mStateStore;
+
+    @Before
+    public void setUp() {
+        TextLayoutCache.getInstance().clear();
+        mPipeline = new RichTextPipeline(new RichTextPipeline.Parser() {
+
+            @Override
+            public CharSequence parse(String source) {
+                mParseCount++;
+                // 把*之间的内容解析为粗体
+                SpannableString parsed = new SpannableString(source.replace("*", ""));
+                parsed.setSpan(new StyleSpan(Typeface.BOLD), 0, source.indexOf('*', 1) - 1,
+                        Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+                return parsed;
+            }
+        }, new Executor() {
+
+            @Override
+            public void execute(Runnable command) {
+                mTasks.add(command);
+            }
+        });
+        mStateStore = new ExpandStateStore(4);
+    }
+
+    @Test
+    public void concurrentRequests_parseOnceAndRebindFromCache() {
+        ExpandableTextView first = createView();
+        ExpandableTextView second = createView();
+        mPipeline.bind(first, "*bold* text", mStateStore, 0);
+        mPipeline.bind(second, "*bold* text", mStateStore, 1);
+        assertEquals(1, mPipeline.getParseCount());
+        assertEquals(0, first.getText().length());
+
+        runTasks();
+        assertEquals(1, mParseCount);
+        assertEquals("bold text", first.getText().toString());
+        assertSame(first.getText(), second.getText());
+        assertEquals(1, ((Spanned) first.getText()).getSpans(0, 4, StyleSpan.class).length);
+
+        // 滑回时从缓存同步绑定，不再解析
+        mPipeline.bind(first, "*other* text", mStateStore, 0);
+        mPipeline.bind(first, "*bold* text", mStateStore, 0);
+        assertEquals("bold text", first.getText().toString());
+        assertEquals(2, mPipeline.getParseCount());
+    }
+
+    @Test
+    public void rebindBeforeParsed_dropsStaleResult() {
+        ExpandableTextView view = createView();
+        mPipeline.bind(view, "*first* text", mStateStore, 0);
+        mPipeline.bind(view, "*second* text", mStateStore, 0);
+
+        runTasks();
+        assertEquals("second text", view.getText().toString());
+        assertEquals(2, mParseCount);
+    }
+
+    private ExpandableTextView createView() {
+        return (ExpandableTextView) LayoutInflater.from(RuntimeEnvironment.application)
+                .inflate(R.layout.list_item, null).findViewById(R.id.expand_text_view);
+    }
+
+    private void runTasks() {
+        while (!mTasks.isEmpty()) {
+            mTasks.remove(0).run();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.chong.expandabletextview;
+
+import android.graphics.drawable.ColorDrawable;
+import android.graphics.drawable.Drawable;
+import android.text.SpannableString;
+import android.text.Spanned;
+import android.text.style.ImageSpan;
+import android.text.style.LocaleSpan;
+import android.widget.TextView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * 缓存key区分改变字体度量的span
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class TextLayoutCacheTest {
+
+    private static final String TEXT = "emoji \uFFFC in a line";
+    private static final int WIDTH = 480;
+    private static final int MAX_LINES = 3;
+
+    private TextView mTextView;
+
+    @Before
+    public void setUp() {
+        TextLayoutCache.getInstance().clear();
+        mTextView = new TextView(RuntimeEnvironment.application);
+    }
+
+    @Test
+    public void imageSpan_keyDependsOnDrawableSize() {
+        TextLayoutCache.Key small = obtainKey(withImage(24));
+        assertEquals(small, obtainKey(withImage(24)));
+        assertNotEquals(small, obtainKey(withImage(96)));
+    }
+
+    @Test
+    public void localeSpan_keyDependsOnLocale() {
+        assertNotEquals(obtainKey(withLocale(Locale.JAPANESE)), obtainKey(withLocale(Locale.CHINESE)));
+        assertEquals(obtainKey(withLocale(Locale.JAPANESE)), obtainKey(withLocale(Locale.JAPANESE)));
+    }
+
+    private TextLayoutCache.Key obtainKey(CharSequence text) {
+        return TextLayoutCache.obtainKey(text, mTextView, WIDTH, MAX_LINES);
+    }
+
+    private static SpannableString withImage(int size) {
+        Drawable drawable = new ColorDrawable();
+        drawable.setBounds(0, 0, size, size);
+        return withSpan(new ImageSpan(drawable));
+    }
+
+    private static SpannableString withLocale(Locale locale) {
+        return withSpan(new LocaleSpan(locale));
+    }
+
+    private static SpannableString withSpan(Object span) {
+        SpannableString text = new SpannableString(TEXT);
+        int start = TEXT.indexOf('\uFFFC');
+        text.setSpan(span, start, start + 1, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        return text;
+    }
+}
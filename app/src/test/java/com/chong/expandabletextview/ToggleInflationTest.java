@@ -0,0 +1,108 @@
+package com.chong.expandabletextview;
+
+import android.content.Context;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewStub;
+import android.widget.TextView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 展开/折叠按钮只在文本需要折叠时创建，创建后重新绑定时复用
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class ToggleInflationTest {
+
+    private static final String SHORT_TEXT = "short text";
+    private static final String LONG_TEXT;
+    private static final int WIDTH = 480;
+
+    static {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            builder.append("Line ").append(i).append('\n');
+        }
+        LONG_TEXT = builder.toString();
+    }
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        TextLayoutCache.getInstance().clear();
+        mContext = RuntimeEnvironment.application;
+    }
+
+    @Test
+    public void expandableTextView_inflatesToggleOnlyForOverflowingText() {
+        View row = LayoutInflater.from(mContext).inflate(R.layout.list_item, null);
+        ExpandableTextView view = (ExpandableTextView) row.findViewById(R.id.expand_text_view);
+        int childCount = view.getChildCount();
+
+        view.setText(SHORT_TEXT);
+        measureAndLayout(row);
+        assertTrue(view.findViewById(R.id.tv_expand_collapse) instanceof ViewStub);
+
+        view.setText(LONG_TEXT);
+        measureAndLayout(row);
+        View toggle = view.findViewById(R.id.tv_expand_collapse);
+        assertTrue(toggle instanceof TextView);
+        assertEquals(View.VISIBLE, toggle.getVisibility());
+
+        view.setText(SHORT_TEXT);
+        measureAndLayout(row);
+        assertSame(toggle, view.findViewById(R.id.tv_expand_collapse));
+        view.setText(LONG_TEXT);
+        measureAndLayout(row);
+        assertSame(toggle, view.findViewById(R.id.tv_expand_collapse));
+        assertEquals(View.VISIBLE, toggle.getVisibility());
+        assertEquals(childCount, view.getChildCount());
+    }
+
+    @Test
+    public void expandableTextView2_createsToggleOnlyForOverflowingText() {
+        ExpandableTextView2 view = new ExpandableTextView2(mContext, null);
+
+        bind(view, SHORT_TEXT);
+        assertNull(view.findViewById(R.id.rl_expandable));
+        assertEquals(1, view.getChildCount());
+
+        bind(view, LONG_TEXT);
+        View toggle = view.findViewById(R.id.rl_expandable);
+        assertNotNull(toggle);
+        assertEquals(View.VISIBLE, toggle.getVisibility());
+
+        bind(view, SHORT_TEXT);
+        bind(view, LONG_TEXT);
+        assertSame(toggle, view.findViewById(R.id.rl_expandable));
+        assertEquals(View.VISIBLE, toggle.getVisibility());
+        assertEquals(2, view.getChildCount());
+    }
+
+    private void bind(ExpandableTextView2 view, String text) {
+        view.setText(text);
+        measureAndLayout(view);
+        // 没有窗口时不会绘制，手动分发绘制前的回调
+        view.findViewById(R.id.tv_expandable).getViewTreeObserver().dispatchOnPreDraw();
+        measureAndLayout(view);
+    }
+
+    private void measureAndLayout(View view) {
+        view.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED));
+        view.layout(0, 0, view.getMeasuredWidth(), view.getMeasuredHeight());
+    }
+}
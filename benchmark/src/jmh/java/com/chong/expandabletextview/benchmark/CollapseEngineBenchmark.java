@@ -0,0 +1,119 @@
+package com.chong.expandabletextview.benchmark;
+
+import com.chong.expandabletextview.core.CollapseEngine;
+import com.chong.expandabletextview.core.Measurement;
+import com.chong.expandabletextview.core.MonospaceLineMeasurer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link CollapseEngine}在不同文本上的吞吐量，使用-prof gc统计每次操作分配的内存
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CollapseEngineBenchmark {
+
+    /**
+     * 每种语料的文本数量，依次测量，避免只测量同一段文本
+     */
+    private static final int TEXTS = 64;
+    private static final int MAX_COLLAPSED_LINES = 4;
+
+    private static final String[] WORDS = {"expandable", "text", "view", "measure", "layout", "a", "collapse"};
+    private static final String[] CJK = {"展开", "折叠", "文本", "测量", "布局", "列表", "。", "，"};
+    private static final String[] EMOJI = {"\uD83D\uDE00", "\uD83D\uDC4D", "\u2764\uFE0F", "\uD83C\uDF89", "ok", " "};
+
+    /**
+     * 语料：SHORT不需要折叠的短文本，LONG长英文，CJK长中文，EMOJI大量emoji的混合文本
+     */
+    @Param({"SHORT", "LONG", "CJK", "EMOJI"})
+    public String corpus;
+
+    private CharSequence[] mTexts;
+    private Measurement[] mMeasurements;
+    private CollapseEngine mEngine;
+    private int mIndex;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        mTexts = new CharSequence[TEXTS];
+        for (int i = 0; i < TEXTS; i++) {
+            if ("SHORT".equals(corpus)) {
+                mTexts[i] = createText(random, WORDS, " ", 3 + random.nextInt(10));
+            } else if ("LONG".equals(corpus)) {
+                mTexts[i] = createText(random, WORDS, " ", 200 + random.nextInt(800));
+            } else if ("CJK".equals(corpus)) {
+                mTexts[i] = createText(random, CJK, "", 200 + random.nextInt(800));
+            } else {
+                mTexts[i] = createText(random, EMOJI, "", 200 + random.nextInt(800));
+            }
+        }
+        mEngine = new CollapseEngine(new MonospaceLineMeasurer(1080, 24.0f, 48, 20), MAX_COLLAPSED_LINES, 96.0f);
+        mMeasurements = new Measurement[TEXTS];
+        for (int i = 0; i < TEXTS; i++) {
+            mMeasurements[i] = mEngine.measureCollapsed(mTexts[i]);
+        }
+    }
+
+    private static String createText(Random random, String[] words, String separator, int count) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            builder.append(words[random.nextInt(words.length)]).append(separator);
+        }
+        return builder.toString();
+    }
+
+    private int nextIndex() {
+        mIndex = (mIndex + 1) % TEXTS;
+        return mIndex;
+    }
+
+    /**
+     * 折叠状态的测量，列表绑定时的主要开销
+     */
+    @Benchmark
+    public Measurement measureCollapsed() {
+        return mEngine.measureCollapsed(mTexts[nextIndex()]);
+    }
+
+    /**
+     * 不布局的短文本判断，长文本在超过一行宽度时返回
+     */
+    @Benchmark
+    public Measurement measureWithoutLayout() {
+        return mEngine.measureWithoutLayout(mTexts[nextIndex()]);
+    }
+
+    /**
+     * 全部文本的测量，展开时的开销
+     */
+    @Benchmark
+    public Measurement measure() {
+        return mEngine.measure(mTexts[nextIndex()]);
+    }
+
+    /**
+     * 已有测量结果时的折叠判断，重新绑定时的开销
+     */
+    @Benchmark
+    public int decide() {
+        int index = nextIndex();
+        Measurement measurement = mMeasurements[index];
+        int end = CollapseEngine.getDisplayEnd(measurement, mTexts[index].length(), MAX_COLLAPSED_LINES, true, true);
+        CollapseEngine.ToggleState state = CollapseEngine.getToggleState(measurement.lineCount, MAX_COLLAPSED_LINES,
+                true, false, true);
+        return end + state.ordinal();
+    }
+}
@@ -0,0 +1,258 @@
+package com.chong.expandabletextview.core;
+
+/**
+ * 折叠判断，与平台无关
+ * <p>
+ * 根据{@link LineMeasurer}的换行结果决定是否需要折叠、折叠时文本截断的位置以及展开/折叠按钮的状态
+ */
+public class CollapseEngine {
+
+    /**
+     * 展开/折叠按钮的状态
+     */
+    public enum ToggleState {
+        /**
+         * 不显示按钮
+         */
+        HIDDEN,
+        /**
+         * 显示展开按钮
+         */
+        EXPAND,
+        /**
+         * 显示折叠按钮
+         */
+        COLLAPSE
+    }
+
+    private final LineMeasurer mMeasurer;
+    private final int mMaxCollapsedLines;
+    private final float mSuffixWidth;
+
+    /**
+     * @param measurer          换行测量器
+     * @param maxCollapsedLines 折叠最大显示行数
+     * @param suffixWidth       折叠时末行后缀的宽度，没有后缀时为0
+     */
+    public CollapseEngine(LineMeasurer measurer, int maxCollapsedLines, float suffixWidth) {
+        mMeasurer = measurer;
+        mMaxCollapsedLines = maxCollapsedLines;
+        mSuffixWidth = suffixWidth;
+    }
+
+    public LineMeasurer getMeasurer() {
+        return mMeasurer;
+    }
+
+    public int getMaxCollapsedLines() {
+        return mMaxCollapsedLines;
+    }
+
+    public float getSuffixWidth() {
+        return mSuffixWidth;
+    }
+
+    /**
+     * 对全部文本进行换行测量
+     */
+    public Measurement measure(CharSequence text) {
+        TextLines lines = mMeasurer.layout(text, text.length());
+        int verticalPadding = mMeasurer.getVerticalPadding();
+        return measureLines(lines, text.length(), lines.getLineTop(lines.getLineCount()) + verticalPadding,
+                verticalPadding, mMaxCollapsedLines, mMeasurer.getWidth() - mSuffixWidth);
+    }
+
+    /**
+     * 只测量折叠行数再多一行的文本，用于折叠状态
+     * <p>
+     * 从估算的长度开始对文本前缀进行布局，行数不足时长度加倍，直到多出折叠行数或者到达文本结尾。
+     * 前缀最后一行可能被截断，之前的行与完整布局相同。超过折叠行数时返回的结果不包含完整高度
+     * <p>
+     * 测量器不是贪心换行时（如高质量、均衡换行），段落内前面的行会受后面文本的影响，但不同段落的换行互不影响，
+     * 前缀扩展到段落结尾后再布局；只有一个很长的段落时需要测量全部文本
+     */
+    public Measurement measureCollapsed(CharSequence text) {
+        boolean greedy = mMeasurer.isGreedy();
+        int length = text.length();
+        int end = Math.max(1, estimateCollapsedLength(text));
+        while (end < length) {
+            if (!greedy) {
+                end = findParagraphEnd(text, end);
+                if (end >= length) {
+                    break;
+                }
+            } else if (Character.isHighSurrogate(text.charAt(end - 1))) {
+                end++;
+            }
+            TextLines lines = mMeasurer.layout(text, end);
+            if (lines.getLineCount() > mMaxCollapsedLines) {
+                return new Measurement(mMaxCollapsedLines + 1,
+                        lines.getLineTop(mMaxCollapsedLines) + mMeasurer.getVerticalPadding(),
+                        Measurement.UNKNOWN, lines.getLineEnd(mMaxCollapsedLines - 1),
+                        findEllipsisEnd(lines, mMaxCollapsedLines - 1, mMeasurer.getWidth() - mSuffixWidth));
+            }
+            end = (int) Math.min(length, (long) end * 2);
+        }
+        return measure(text);
+    }
+
+    /**
+     * 包含end - 1处字符的段落的结尾，即之后第一个换行符的下一个位置，没有换行符时为文本长度
+     */
+    private static int findParagraphEnd(CharSequence text, int end) {
+        int length = text.length();
+        for (int i = end - 1; i < length; i++) {
+            if (text.charAt(i) == '\n') {
+                return i + 1;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * 不对文本布局，按字符宽度上限判断文本是否一定不超过折叠行数
+     * <p>
+     * 每个段落按字符宽度上限计算的宽度都不超过一行时，行数就是段落数，与换行策略无关。
+     * 段落数超过折叠行数、有段落可能换行或者包含无法确定宽度的字符时返回null，需要实际布局。
+     * 每个段落最多检查一行能容纳的字符数
+     *
+     * @return 不需要折叠时的测量结果，不包含高度；无法判断时返回null
+     */
+    public Measurement measureWithoutLayout(CharSequence text) {
+        int length = text.length();
+        if (length == 0) {
+            return null;
+        }
+        int width = mMeasurer.getWidth();
+        int lineCount = 1;
+        float lineWidth = 0.0f;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == '\n') {
+                if (needsCollapse(++lineCount, mMaxCollapsedLines)) {
+                    return null;
+                }
+                lineWidth = 0.0f;
+                continue;
+            }
+            float advance = mMeasurer.getMaxAdvance(c);
+            if (advance < 0.0f) {
+                return null;
+            }
+            lineWidth += advance;
+            if (lineWidth > width) {
+                return null;
+            }
+        }
+        return new Measurement(lineCount, Measurement.UNKNOWN, Measurement.UNKNOWN, length);
+    }
+
+    /**
+     * 估算折叠行数再多一行最多能显示的字符数，按最窄字符宽度计算
+     */
+    public int estimateCollapsedLength(CharSequence text) {
+        float minAdvance = Math.max(1.0f, mMeasurer.getMinCharWidth());
+        int charsPerLine = (int) Math.ceil(mMeasurer.getWidth() / minAdvance);
+        long length = (long) charsPerLine * (mMaxCollapsedLines + 1);
+        return (int) Math.min(text.length(), length);
+    }
+
+    /**
+     * 从已经换行的全部文本中得到测量结果
+     *
+     * @param lines             全部文本的换行结果
+     * @param length            文本长度
+     * @param fullHeight        展开时的高度
+     * @param verticalPadding   文本上下的内边距之和
+     * @param maxCollapsedLines 折叠最大显示行数
+     * @param availableWidth    折叠时末行文本的可用宽度
+     */
+    public static Measurement measureLines(TextLines lines, int length, int fullHeight, int verticalPadding,
+                                           int maxCollapsedLines, float availableWidth) {
+        int lineCount = lines.getLineCount();
+        if (!needsCollapse(lineCount, maxCollapsedLines)) {
+            return new Measurement(lineCount, fullHeight, fullHeight, length);
+        }
+        return new Measurement(lineCount, lines.getLineTop(maxCollapsedLines) + verticalPadding, fullHeight,
+                lines.getLineEnd(maxCollapsedLines - 1),
+                findEllipsisEnd(lines, maxCollapsedLines - 1, availableWidth));
+    }
+
+    /**
+     * 在已经换行的文本上二分查找，得到指定行内宽度不超过availableWidth的最后位置
+     *
+     * @param lines          换行结果
+     * @param line           查找的行
+     * @param availableWidth 可用宽度
+     * @return 截断位置，不会超过该行可见文本的结尾
+     */
+    public static int findEllipsisEnd(TextLines lines, int line, float availableWidth) {
+        int start = lines.getLineStart(line);
+        int lineEnd = lines.getLineEnd(line);
+        int low = start;
+        int high = lines.getLineVisibleEnd(line);
+        if (lines.getLineMax(line) <= availableWidth) {
+            return high;
+        }
+        float left = lines.getPrimaryHorizontal(start);
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            // 行末位置属于下一行，使用行宽
+            float width = mid == lineEnd ? lines.getLineMax(line) : Math.abs(lines.getPrimaryHorizontal(mid) - left);
+            if (width <= availableWidth) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        CharSequence text = lines.getText();
+        if (low > start && Character.isHighSurrogate(text.charAt(low - 1))) {
+            low--;
+        }
+        return low;
+    }
+
+    /**
+     * 文本行数是否超过折叠行数
+     */
+    public static boolean needsCollapse(int lineCount, int maxCollapsedLines) {
+        return lineCount > maxCollapsedLines;
+    }
+
+    /**
+     * 当前状态下显示到文本的位置
+     *
+     * @param measurement       测量结果
+     * @param length            文本长度
+     * @param maxCollapsedLines 折叠最大显示行数
+     * @param collapsed         是否处于折叠状态
+     * @param inline            折叠时是否在末行内嵌展开文本
+     */
+    public static int getDisplayEnd(Measurement measurement, int length, int maxCollapsedLines, boolean collapsed,
+                                    boolean inline) {
+        if (!collapsed || !needsCollapse(measurement.lineCount, maxCollapsedLines)) {
+            return length;
+        }
+        return inline ? measurement.ellipsisEnd : measurement.collapsedEnd;
+    }
+
+    /**
+     * 展开/折叠按钮的状态
+     *
+     * @param lineCount         文本行数
+     * @param maxCollapsedLines 折叠最大显示行数
+     * @param collapsed         是否处于折叠状态
+     * @param onlyExpand        是否只能展开，不能折叠
+     * @param inline            折叠时是否在末行内嵌展开文本，内嵌时不显示单独的展开按钮
+     */
+    public static ToggleState getToggleState(int lineCount, int maxCollapsedLines, boolean collapsed,
+                                             boolean onlyExpand, boolean inline) {
+        if (!needsCollapse(lineCount, maxCollapsedLines)) {
+            return ToggleState.HIDDEN;
+        }
+        if (collapsed) {
+            return inline ? ToggleState.HIDDEN : ToggleState.EXPAND;
+        }
+        return onlyExpand ? ToggleState.HIDDEN : ToggleState.COLLAPSE;
+    }
+}
@@ -0,0 +1,40 @@
+package com.chong.expandabletextview.core;
+
+/**
+ * 对文本进行换行的测量器，由不同平台的文本排版实现
+ * <p>
+ * 实现类需要在创建时保存字体和宽度等设置，之后可以在任意线程使用
+ */
+public interface LineMeasurer {
+
+    /**
+     * 文本可用宽度
+     */
+    int getWidth();
+
+    /**
+     * 文本上下的内边距之和，计入测量的高度
+     */
+    int getVerticalPadding();
+
+    /**
+     * 最窄字符的宽度，用于估算一行最多能显示的字符数
+     */
+    float getMinCharWidth();
+
+    /**
+     * 字符宽度的上限，用于不布局判断短文本；无法确定时返回负数
+     */
+    float getMaxAdvance(char c);
+
+    /**
+     * 是否逐行贪心换行，每行的换行位置只取决于这一行及之前的文本。
+     * 只有贪心换行时，文本前缀布局的前几行才与完整布局相同
+     */
+    boolean isGreedy();
+
+    /**
+     * 对文本[0, end)部分换行，测量过程中文本不能被修改
+     */
+    TextLines layout(CharSequence text, int end);
+}
@@ -0,0 +1,425 @@
+package com.chong.expandabletextview.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 由内存映射的UTF-8文件提供内容的文本，用于显示很大的日志和文档
+ * <p>
+ * 文件内容不复制到堆中：按需把附近的字符解码到一个固定大小的窗口，按稀疏的偏移索引定位，
+ * 索引条目数有上限，文件越大索引间隔越大，堆内存占用与文件大小无关。
+ * 索引按需逐步建立，只统计不解码：{@link #openPrefix}只扫描文件开头，可以立即显示折叠部分；
+ * {@link #complete}继续扫描剩余部分得到整个文件的文本，耗时与文件大小成正比，需要在工作线程中调用。
+ * {@link #open}一次扫描整个文件，同样需要在工作线程中调用，显示前的等待时间随文件大小增加。
+ * 无效的UTF-8字节按U+FFFD解码。{@link #subSequence}返回共享同一个文件的文本，{@link #toString}才会解码到堆中
+ * <p>
+ * 在ExpandableTextView中折叠显示时只解码折叠部分；展开时需要配合virtualize_length按块显示，
+ * 否则TextView会把全部文本转换为String
+ * <p>
+ * 可以在多个线程中读取，文件在映射后不能被修改
+ */
+public final class MappedText implements CharSequence {
+
+    /**
+     * 解码窗口的字符数
+     */
+    static final int WINDOW_CHARS = 2048;
+    /**
+     * 偏移索引的最大条目数
+     */
+    static final int MAX_INDEX_ENTRIES = 8192;
+    private static final int REPLACEMENT = 0xFFFD;
+
+    private final Source mSource;
+    private final int mStart;
+    private final int mEnd;
+
+    private MappedText(Source source, int start, int end) {
+        mSource = source;
+        mStart = start;
+        mEnd = end;
+    }
+
+    /**
+     * 映射UTF-8文件，扫描全部字节统计字符数并建立索引，不解码内容
+     * <p>
+     * 耗时与文件大小成正比，需要在工作线程中调用，之后获取长度和按位置读取的耗时与文件大小无关。
+     * 需要尽快显示开头时使用{@link #openPrefix}
+     *
+     * @param file 文本文件，不能超过2GB
+     * @throws IOException 文件无法读取或超过2GB时
+     */
+    public static MappedText open(File file) throws IOException {
+        return open(file, WINDOW_CHARS, MAX_INDEX_ENTRIES);
+    }
+
+    /**
+     * @param windowChars     解码窗口的字符数
+     * @param maxIndexEntries 偏移索引的最大条目数，需要是偶数
+     */
+    static MappedText open(File file, int windowChars, int maxIndexEntries) throws IOException {
+        return openPrefix(file, Integer.MAX_VALUE, windowChars, maxIndexEntries);
+    }
+
+    /**
+     * 映射UTF-8文件，只扫描开头的maxChars个字符，返回这部分文本，耗时与文件大小无关
+     * <p>
+     * 文件更长时{@link #isComplete}为false，之后在工作线程中调用{@link #complete}得到整个文件的文本，
+     * 两者共享映射、索引和解码窗口。maxChars一般取折叠部分可能显示的字符数
+     *
+     * @param file     文本文件，不能超过2GB
+     * @param maxChars 扫描的字符数，结尾可能多包含代理对的后半个
+     * @throws IOException 文件无法读取或超过2GB时
+     */
+    public static MappedText openPrefix(File file, int maxChars) throws IOException {
+        return openPrefix(file, maxChars, WINDOW_CHARS, MAX_INDEX_ENTRIES);
+    }
+
+    static MappedText openPrefix(File file, int maxChars, int windowChars, int maxIndexEntries)
+            throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File too large to map: " + file + " (" + size + " bytes)");
+            }
+            // 关闭文件后映射仍然有效
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            String identity = file.getAbsolutePath() + ':' + size + ':' + file.lastModified();
+            Source source = new Source(buffer, identity, windowChars, maxIndexEntries);
+            return new MappedText(source, 0, source.scanTo(maxChars));
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    @Override
+    public int length() {
+        return mEnd - mStart;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length()) {
+            throw new IndexOutOfBoundsException("index " + index + ", length " + length());
+        }
+        return mSource.charAt(mStart + index);
+    }
+
+    /**
+     * 返回共享同一个文件的文本，不解码
+     */
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length() || start > end) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length());
+        }
+        return new MappedText(mSource, mStart + start, mStart + end);
+    }
+
+    /**
+     * 把[start, end)的字符解码到dest
+     */
+    public void getChars(int start, int end, char[] dest, int destOffset) {
+        if (start < 0 || end > length() || start > end) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length());
+        }
+        mSource.getChars(mStart + start, mStart + end, dest, destOffset);
+    }
+
+    /**
+     * 文本是否到达文件结尾，{@link #openPrefix}只扫描了文件开头时为false
+     */
+    public boolean isComplete() {
+        synchronized (mSource) {
+            return mSource.isScanned() && mEnd == mSource.mScannedChars;
+        }
+    }
+
+    /**
+     * 继续扫描文件剩余部分，返回从本文本开头到文件结尾的文本，已经到达结尾时返回自身
+     * <p>
+     * 耗时与剩余部分的大小成正比，需要在工作线程中调用
+     */
+    public MappedText complete() {
+        if (isComplete()) {
+            return this;
+        }
+        return new MappedText(mSource, mStart, mSource.scanTo(Integer.MAX_VALUE));
+    }
+
+    /**
+     * 文件的UTF-8字节数
+     */
+    public int getByteLength() {
+        return mSource.mBuffer.limit();
+    }
+
+    /**
+     * 标识文件和文本范围的字符串，用于代替文本内容作为缓存key，不解码文本
+     * <p>
+     * 以'\0'开头，不会与普通文本的缓存key混淆。文件修改后大小或修改时间改变，标识随之改变
+     */
+    public String getIdentity() {
+        return "\u0000" + mSource.mIdentity + '[' + mStart + ',' + (mStart + length()) + ')';
+    }
+
+    /**
+     * 已经扫描并建立索引的字符数
+     */
+    int getScannedChars() {
+        synchronized (mSource) {
+            return mSource.mScannedChars;
+        }
+    }
+
+    /**
+     * 索引条目数，不超过打开时指定的最大条目数
+     */
+    int getIndexEntryCount() {
+        return mSource.mIndexCount;
+    }
+
+    /**
+     * 已解码到窗口中的字符总数
+     */
+    long getDecodedChars() {
+        synchronized (mSource) {
+            return mSource.mDecodedChars;
+        }
+    }
+
+    /**
+     * 解码全部文本到堆中
+     */
+    @Override
+    public String toString() {
+        char[] chars = new char[length()];
+        getChars(0, chars.length, chars, 0);
+        return new String(chars);
+    }
+
+    /**
+     * 同一个文件的映射、索引和解码窗口，由所有子文本共享
+     */
+    private static final class Source {
+        private final ByteBuffer mBuffer;
+        private final String mIdentity;
+        private final char[] mWindow;
+        /**
+         * 第k个条目为第k * mStride个字符的位置：字节偏移 * 2，字符是代理对的后半个时加1
+         */
+        private final long[] mIndex;
+        private int mIndexCount;
+        private int mStride;
+        /**
+         * 已经扫描的字节数和字符数，以及下一个索引条目的字符位置
+         */
+        private int mScannedBytes;
+        private int mScannedChars;
+        private long mNextEntry;
+        /**
+         * 窗口中第一个字符的位置，窗口为空时为-1
+         */
+        private int mWindowStart = -1;
+        private int mWindowLength;
+        /**
+         * 窗口之后第一个字符的位置，按顺序读取时不需要从索引重新定位
+         */
+        private long mWindowNext;
+        private long mDecodedChars;
+
+        Source(ByteBuffer buffer, String identity, int windowChars, int maxIndexEntries) {
+            mBuffer = buffer;
+            mIdentity = identity;
+            mWindow = new char[windowChars];
+            mIndex = new long[maxIndexEntries];
+            mStride = windowChars;
+        }
+
+        synchronized char charAt(int index) {
+            if (index < mWindowStart || index >= mWindowStart + mWindowLength || mWindowStart < 0) {
+                fillWindow(index - index % mWindow.length);
+            }
+            return mWindow[index - mWindowStart];
+        }
+
+        synchronized void getChars(int start, int end, char[] dest, int destOffset) {
+            int index = start;
+            while (index < end) {
+                if (index < mWindowStart || index >= mWindowStart + mWindowLength || mWindowStart < 0) {
+                    fillWindow(index - index % mWindow.length);
+                }
+                int count = Math.min(end, mWindowStart + mWindowLength) - index;
+                System.arraycopy(mWindow, index - mWindowStart, dest, destOffset + index - start, count);
+                index += count;
+            }
+        }
+
+        synchronized boolean isScanned() {
+            return mScannedBytes >= mBuffer.limit();
+        }
+
+        /**
+         * 从上次扫描结束的位置继续统计字符数，直到至少chars个字符或者文件结尾，
+         * 每mStride个字符记录一个索引条目，条目满时间隔加倍
+         *
+         * @return 已经扫描的字符数
+         */
+        synchronized int scanTo(int chars) {
+            int limit = mBuffer.limit();
+            int pos = mScannedBytes;
+            int scanned = mScannedChars;
+            long next = mNextEntry;
+            while (pos < limit && scanned < chars) {
+                int sequence = decode(mBuffer, pos, limit);
+                int count = Character.charCount(codePointOf(sequence));
+                if (scanned + count > next) {
+                    // 条目位置可能落在代理对的后半个
+                    addIndexEntry((long) pos * 2 + (next - scanned));
+                    next = (long) mIndexCount * mStride;
+                }
+                scanned += count;
+                pos += lengthOf(sequence);
+            }
+            mScannedBytes = pos;
+            mScannedChars = scanned;
+            mNextEntry = next;
+            return scanned;
+        }
+
+        private void addIndexEntry(long position) {
+            if (mIndexCount == mIndex.length) {
+                // 只保留偶数条目，间隔加倍，新条目正好落在加倍后的间隔上
+                for (int i = 0; i < mIndexCount / 2; i++) {
+                    mIndex[i] = mIndex[i * 2];
+                }
+                mIndexCount /= 2;
+                mStride *= 2;
+            }
+            mIndex[mIndexCount++] = position;
+        }
+
+        /**
+         * 解码从start开始的窗口，start是窗口大小的整数倍
+         */
+        private void fillWindow(int start) {
+            long position;
+            int chars;
+            if (start == mWindowStart + mWindowLength && mWindowStart >= 0) {
+                // 顺序读取，从上一个窗口的结束位置继续
+                position = mWindowNext;
+                chars = start;
+            } else {
+                int entry = start / mStride;
+                position = mIndex[entry];
+                chars = entry * mStride;
+            }
+            int limit = mBuffer.limit();
+            int pos = (int) (position / 2);
+            boolean isLowSurrogate = position % 2 != 0;
+            // 从索引条目跳到窗口开始位置，只统计不解码
+            while (chars < start) {
+                int sequence = decode(mBuffer, pos, limit);
+                if (isLowSurrogate) {
+                    isLowSurrogate = false;
+                    pos += lengthOf(sequence);
+                    chars++;
+                } else if (Character.charCount(codePointOf(sequence)) == 2 && chars + 1 == start) {
+                    isLowSurrogate = true;
+                    chars++;
+                } else {
+                    pos += lengthOf(sequence);
+                    chars += Character.charCount(codePointOf(sequence));
+                }
+            }
+            int length = 0;
+            int end = Math.min(mWindow.length, mScannedChars - start);
+            while (length < end) {
+                int sequence = decode(mBuffer, pos, limit);
+                int codePoint = codePointOf(sequence);
+                if (isLowSurrogate) {
+                    mWindow[length++] = Character.lowSurrogate(codePoint);
+                    isLowSurrogate = false;
+                    pos += lengthOf(sequence);
+                } else if (Character.charCount(codePoint) == 2) {
+                    mWindow[length++] = Character.highSurrogate(codePoint);
+                    if (length < end) {
+                        mWindow[length++] = Character.lowSurrogate(codePoint);
+                        pos += lengthOf(sequence);
+                    } else {
+                        isLowSurrogate = true;
+                    }
+                } else {
+                    mWindow[length++] = (char) codePoint;
+                    pos += lengthOf(sequence);
+                }
+            }
+            mWindowStart = start;
+            mWindowLength = length;
+            mDecodedChars += length;
+            mWindowNext = (long) pos * 2 + (isLowSurrogate ? 1 : 0);
+        }
+    }
+
+    /**
+     * 解码pos开始的一个UTF-8序列
+     *
+     * @return 高8位为字节数，低24位为码点，无效的序列按一个字节的U+FFFD返回
+     */
+    private static int decode(ByteBuffer buffer, int pos, int limit) {
+        int b = buffer.get(pos) & 0xFF;
+        if (b < 0x80) {
+            return sequence(1, b);
+        }
+        int length;
+        int codePoint;
+        int min;
+        if (b >= 0xC2 && b <= 0xDF) {
+            length = 2;
+            codePoint = b & 0x1F;
+            min = 0x80;
+        } else if (b >= 0xE0 && b <= 0xEF) {
+            length = 3;
+            codePoint = b & 0x0F;
+            min = 0x800;
+        } else if (b >= 0xF0 && b <= 0xF4) {
+            length = 4;
+            codePoint = b & 0x07;
+            min = Character.MIN_SUPPLEMENTARY_CODE_POINT;
+        } else {
+            return sequence(1, REPLACEMENT);
+        }
+        if (pos + length > limit) {
+            return sequence(1, REPLACEMENT);
+        }
+        for (int i = 1; i < length; i++) {
+            int c = buffer.get(pos + i) & 0xFF;
+            if ((c & 0xC0) != 0x80) {
+                return sequence(1, REPLACEMENT);
+            }
+            codePoint = (codePoint << 6) | (c & 0x3F);
+        }
+        if (codePoint < min || codePoint > Character.MAX_CODE_POINT
+                || (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE)) {
+            return sequence(length, REPLACEMENT);
+        }
+        return sequence(length, codePoint);
+    }
+
+    private static int sequence(int length, int codePoint) {
+        return length << 24 | codePoint;
+    }
+
+    private static int lengthOf(int sequence) {
+        return sequence >>> 24;
+    }
+
+    private static int codePointOf(int sequence) {
+        return sequence & 0xFFFFFF;
+    }
+}
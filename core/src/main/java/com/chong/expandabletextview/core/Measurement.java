@@ -0,0 +1,50 @@
+package com.chong.expandabletextview.core;
+
+/**
+ * 测量结果
+ */
+public final class Measurement {
+    /**
+     * 只测量了折叠部分时，未知的完整高度
+     */
+    public static final int UNKNOWN = -1;
+    /**
+     * 文本总行数，只测量了折叠部分时为折叠行数加一
+     */
+    public final int lineCount;
+    /**
+     * 折叠时TextView的高度
+     */
+    public final int collapsedHeight;
+    /**
+     * 展开时TextView的高度，只测量了折叠部分时为{@link #UNKNOWN}
+     */
+    public final int fullHeight;
+    /**
+     * 折叠时最后一个显示字符之后的位置，不需要折叠时为文本长度
+     */
+    public final int collapsedEnd;
+    /**
+     * 折叠时在末行添加后缀，文本需要截断的位置，没有后缀时与collapsedEnd相同
+     */
+    public final int ellipsisEnd;
+
+    public Measurement(int lineCount, int collapsedHeight, int fullHeight, int collapsedEnd) {
+        this(lineCount, collapsedHeight, fullHeight, collapsedEnd, collapsedEnd);
+    }
+
+    public Measurement(int lineCount, int collapsedHeight, int fullHeight, int collapsedEnd, int ellipsisEnd) {
+        this.lineCount = lineCount;
+        this.collapsedHeight = collapsedHeight;
+        this.fullHeight = fullHeight;
+        this.collapsedEnd = collapsedEnd;
+        this.ellipsisEnd = ellipsisEnd;
+    }
+
+    /**
+     * 是否测量了全部文本
+     */
+    public boolean isComplete() {
+        return fullHeight != UNKNOWN;
+    }
+}
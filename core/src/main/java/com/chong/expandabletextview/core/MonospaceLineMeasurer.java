@@ -0,0 +1,205 @@
+package com.chong.expandabletextview.core;
+
+/**
+ * 按固定字符宽度换行的测量器，不依赖平台的字体，用于JVM上的测试和基准
+ * <p>
+ * 中日韩文字、全角字符和代理对字符（如emoji）按两倍宽度计算。在空格和中日韩文字之后可以换行，
+ * 单词超过一行时按字符换行，换行符强制换行
+ */
+public class MonospaceLineMeasurer implements LineMeasurer {
+
+    private final int mWidth;
+    private final float mCharWidth;
+    private final int mLineHeight;
+    private final int mVerticalPadding;
+
+    /**
+     * @param width           文本可用宽度
+     * @param charWidth       半角字符宽度
+     * @param lineHeight      行高
+     * @param verticalPadding 文本上下的内边距之和
+     */
+    public MonospaceLineMeasurer(int width, float charWidth, int lineHeight, int verticalPadding) {
+        mWidth = width;
+        mCharWidth = charWidth;
+        mLineHeight = lineHeight;
+        mVerticalPadding = verticalPadding;
+    }
+
+    @Override
+    public int getWidth() {
+        return mWidth;
+    }
+
+    @Override
+    public int getVerticalPadding() {
+        return mVerticalPadding;
+    }
+
+    @Override
+    public float getMinCharWidth() {
+        return mCharWidth;
+    }
+
+    @Override
+    public float getMaxAdvance(char c) {
+        // 代理对中的每个char按半角宽度计算，合计为两倍宽度
+        return isWide(c) ? mCharWidth * 2 : mCharWidth;
+    }
+
+    @Override
+    public boolean isGreedy() {
+        return true;
+    }
+
+    @Override
+    public TextLines layout(CharSequence text, int end) {
+        return new Lines(text, end);
+    }
+
+    /**
+     * 从index开始的字符占用的char数量，代理对为2
+     */
+    private static int charCount(CharSequence text, int index, int end) {
+        if (Character.isHighSurrogate(text.charAt(index)) && index + 1 < end
+                && Character.isLowSurrogate(text.charAt(index + 1))) {
+            return 2;
+        }
+        return 1;
+    }
+
+    private static boolean isWide(char c) {
+        return (c >= '\u2E80' && c <= '\u9FFF') || (c >= '\uAC00' && c <= '\uD7AF') || (c >= '\uFF00' && c <= '\uFFEF');
+    }
+
+    private float advance(char c, int count) {
+        return count == 2 || isWide(c) ? mCharWidth * 2 : mCharWidth;
+    }
+
+    private float measure(CharSequence text, int start, int end) {
+        float width = 0.0f;
+        int i = start;
+        while (i < end) {
+            int count = charCount(text, i, end);
+            width += advance(text.charAt(i), count);
+            i += count;
+        }
+        return width;
+    }
+
+    private final class Lines implements TextLines {
+        private final CharSequence mText;
+        private int[] mStarts = new int[8];
+        private int mLineCount;
+
+        Lines(CharSequence text, int end) {
+            mText = text;
+            int lineStart = 0;
+            int lastBreak = -1;
+            float x = 0.0f;
+            int i = 0;
+            while (i < end) {
+                char c = text.charAt(i);
+                if (c == '\n') {
+                    addLine(lineStart);
+                    lineStart = i + 1;
+                    lastBreak = -1;
+                    x = 0.0f;
+                    i++;
+                    continue;
+                }
+                int count = charCount(text, i, end);
+                float advance = advance(c, count);
+                if (c == ' ') {
+                    // 行末的空格不占宽度
+                    x += advance;
+                    lastBreak = i + 1;
+                    i++;
+                    continue;
+                }
+                if (x + advance > mWidth && i > lineStart) {
+                    addLine(lineStart);
+                    lineStart = lastBreak > lineStart ? lastBreak : i;
+                    lastBreak = -1;
+                    x = measure(text, lineStart, i);
+                    continue;
+                }
+                x += advance;
+                i += count;
+                if (isWide(c) || count == 2) {
+                    lastBreak = i;
+                }
+            }
+            addLine(lineStart);
+            mStarts[mLineCount] = end;
+        }
+
+        private void addLine(int start) {
+            if (mLineCount + 1 >= mStarts.length) {
+                int[] starts = new int[mStarts.length * 2];
+                System.arraycopy(mStarts, 0, starts, 0, mLineCount);
+                mStarts = starts;
+            }
+            mStarts[mLineCount++] = start;
+        }
+
+        @Override
+        public CharSequence getText() {
+            return mText;
+        }
+
+        @Override
+        public int getLineCount() {
+            return mLineCount;
+        }
+
+        @Override
+        public int getLineTop(int line) {
+            return line * mLineHeight;
+        }
+
+        @Override
+        public int getLineStart(int line) {
+            return mStarts[line];
+        }
+
+        @Override
+        public int getLineEnd(int line) {
+            return mStarts[line + 1];
+        }
+
+        @Override
+        public int getLineVisibleEnd(int line) {
+            int start = mStarts[line];
+            int end = mStarts[line + 1];
+            while (end > start) {
+                char c = mText.charAt(end - 1);
+                if (c != ' ' && c != '\n') {
+                    break;
+                }
+                end--;
+            }
+            return end;
+        }
+
+        @Override
+        public float getLineMax(int line) {
+            return measure(mText, mStarts[line], getLineVisibleEnd(line));
+        }
+
+        @Override
+        public float getPrimaryHorizontal(int offset) {
+            int low = 0;
+            int high = mLineCount - 1;
+            while (low < high) {
+                int mid = (low + high + 1) >>> 1;
+                if (mStarts[mid] <= offset) {
+                    low = mid;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return measure(mText, mStarts[low], offset);
+        }
+    }
+}
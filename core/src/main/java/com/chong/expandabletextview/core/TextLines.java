@@ -0,0 +1,38 @@
+package com.chong.expandabletextview.core;
+
+/**
+ * 换行后的文本，与android.text.Layout中用到的方法含义相同
+ */
+public interface TextLines {
+
+    CharSequence getText();
+
+    int getLineCount();
+
+    /**
+     * 行顶部的位置，line等于行数时为文本底部
+     */
+    int getLineTop(int line);
+
+    int getLineStart(int line);
+
+    /**
+     * 行结尾之后的位置，包含行末的空白和换行符
+     */
+    int getLineEnd(int line);
+
+    /**
+     * 行结尾之后的位置，不包含行末的空白
+     */
+    int getLineVisibleEnd(int line);
+
+    /**
+     * 行宽度，不包含行末的空白
+     */
+    float getLineMax(int line);
+
+    /**
+     * offset处字符左侧的水平位置
+     */
+    float getPrimaryHorizontal(int offset);
+}
@@ -0,0 +1,210 @@
+package com.chong.expandabletextview.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CollapseEngineTest {
+
+    private static final int MAX_COLLAPSED_LINES = 3;
+    private static final int LINE_HEIGHT = 10;
+    private static final int PADDING = 4;
+
+    private final LineMeasurer mMeasurer = new MonospaceLineMeasurer(100, 10.0f, LINE_HEIGHT, PADDING);
+    private final CollapseEngine mEngine = new CollapseEngine(mMeasurer, MAX_COLLAPSED_LINES, 0.0f);
+
+    @Test
+    public void shortText_doesNotCollapse() {
+        Measurement measurement = mEngine.measureCollapsed("short text");
+        assertEquals(1, measurement.lineCount);
+        assertTrue(measurement.isComplete());
+        assertEquals(LINE_HEIGHT + PADDING, measurement.fullHeight);
+        assertEquals(measurement.fullHeight, measurement.collapsedHeight);
+        assertEquals(10, measurement.collapsedEnd);
+    }
+
+    @Test
+    public void measureWithoutLayout_onlyDecidesParagraphsThatFitOneLine() {
+        Measurement measurement = mEngine.measureWithoutLayout("short\n展开折叠\nlast");
+        assertEquals(3, measurement.lineCount);
+        assertEquals(mEngine.measure("short\n展开折叠\nlast").lineCount, measurement.lineCount);
+        assertFalse(measurement.isComplete());
+        // 行数超过折叠行数、段落可能换行时需要实际布局
+        assertNull(mEngine.measureWithoutLayout("a\nb\nc\nd"));
+        assertNull(mEngine.measureWithoutLayout(repeat("a", 11)));
+        assertNotNull(mEngine.measureWithoutLayout(repeat("a", 10)));
+    }
+
+    @Test
+    public void measureCollapsed_matchesFullMeasurement() {
+        String text = repeat("lorem ipsum ", 200) + repeat("展开折叠", 50);
+        Measurement full = mEngine.measure(text);
+        Measurement collapsed = mEngine.measureCollapsed(text);
+        assertTrue(full.lineCount > MAX_COLLAPSED_LINES);
+        assertFalse(collapsed.isComplete());
+        assertEquals(MAX_COLLAPSED_LINES + 1, collapsed.lineCount);
+        assertEquals(full.collapsedHeight, collapsed.collapsedHeight);
+        assertEquals(full.collapsedEnd, collapsed.collapsedEnd);
+        assertEquals(MAX_COLLAPSED_LINES * LINE_HEIGHT + PADDING, collapsed.collapsedHeight);
+    }
+
+    @Test
+    public void measureCollapsed_nonGreedySingleParagraphUsesFullLayout() {
+        String text = repeat("a bb ccc ", 2) + repeat("ab cd ef gh ", 2);
+        BalancedLineMeasurer measurer = new BalancedLineMeasurer(100, 10.0f, LINE_HEIGHT, PADDING);
+        CollapseEngine engine = new CollapseEngine(measurer, MAX_COLLAPSED_LINES, 0.0f);
+        Measurement full = engine.measure(text);
+        // 均衡换行时前缀布局的折叠位置与完整布局不同
+        TextLines prefix = measurer.layout(text, engine.estimateCollapsedLength(text));
+        assertNotEquals(full.collapsedEnd, prefix.getLineEnd(MAX_COLLAPSED_LINES - 1));
+
+        Measurement collapsed = engine.measureCollapsed(text);
+        assertTrue(collapsed.isComplete());
+        assertEquals(full.lineCount, collapsed.lineCount);
+        assertEquals(full.collapsedEnd, collapsed.collapsedEnd);
+        assertEquals(full.ellipsisEnd, collapsed.ellipsisEnd);
+    }
+
+    @Test
+    public void measureCollapsed_nonGreedyLaysOutWholeParagraphs() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            builder.append(repeat("lorem ipsum ", 3 + i % 4)).append('\n');
+        }
+        String text = builder.toString();
+        final int[] maxEnd = new int[1];
+        MonospaceLineMeasurer paragraphs = new MonospaceLineMeasurer(100, 10.0f, LINE_HEIGHT, PADDING) {
+
+            @Override
+            public boolean isGreedy() {
+                return false;
+            }
+
+            @Override
+            public TextLines layout(CharSequence source, int end) {
+                // 只在段落结尾截断
+                assertTrue("end " + end, end == source.length() || source.charAt(end - 1) == '\n');
+                maxEnd[0] = Math.max(maxEnd[0], end);
+                return super.layout(source, end);
+            }
+        };
+        CollapseEngine engine = new CollapseEngine(paragraphs, MAX_COLLAPSED_LINES, 0.0f);
+        Measurement collapsed = engine.measureCollapsed(text);
+        assertTrue("laid out " + maxEnd[0], maxEnd[0] < text.length() / 10);
+        assertFalse(collapsed.isComplete());
+
+        Measurement full = engine.measure(text);
+        assertEquals(full.collapsedHeight, collapsed.collapsedHeight);
+        assertEquals(full.collapsedEnd, collapsed.collapsedEnd);
+        assertEquals(full.ellipsisEnd, collapsed.ellipsisEnd);
+    }
+
+    @Test
+    public void suffix_cutsLastCollapsedLine() {
+        String text = repeat("abcdefghij", 10);
+        CollapseEngine engine = new CollapseEngine(mMeasurer, MAX_COLLAPSED_LINES, 30.0f);
+        Measurement measurement = engine.measure(text);
+        assertEquals(30, measurement.collapsedEnd);
+        assertEquals(27, measurement.ellipsisEnd);
+    }
+
+    @Test
+    public void suffix_doesNotSplitSurrogatePair() {
+        // 每个emoji占两个char，宽度为20
+        String text = repeat("😀", 40);
+        CollapseEngine engine = new CollapseEngine(mMeasurer, 1, 30.0f);
+        Measurement measurement = engine.measure(text);
+        assertEquals(10, measurement.collapsedEnd);
+        assertEquals(6, measurement.ellipsisEnd);
+    }
+
+    @Test
+    public void displayEnd() {
+        Measurement measurement = new Measurement(5, 30, 50, 20, 18);
+        assertEquals(20, CollapseEngine.getDisplayEnd(measurement, 40, MAX_COLLAPSED_LINES, true, false));
+        assertEquals(18, CollapseEngine.getDisplayEnd(measurement, 40, MAX_COLLAPSED_LINES, true, true));
+        assertEquals(40, CollapseEngine.getDisplayEnd(measurement, 40, MAX_COLLAPSED_LINES, false, true));
+        assertEquals(40, CollapseEngine.getDisplayEnd(measurement, 40, 5, true, false));
+    }
+
+    @Test
+    public void toggleState() {
+        assertEquals(CollapseEngine.ToggleState.HIDDEN, CollapseEngine.getToggleState(3, 3, true, false, false));
+        assertEquals(CollapseEngine.ToggleState.EXPAND, CollapseEngine.getToggleState(4, 3, true, false, false));
+        assertEquals(CollapseEngine.ToggleState.HIDDEN, CollapseEngine.getToggleState(4, 3, true, false, true));
+        assertEquals(CollapseEngine.ToggleState.COLLAPSE, CollapseEngine.getToggleState(4, 3, false, false, true));
+        assertEquals(CollapseEngine.ToggleState.HIDDEN, CollapseEngine.getToggleState(4, 3, false, true, false));
+    }
+
+    /**
+     * 均衡换行：保持贪心换行的行数，使用能容纳这些行的最小宽度，每行的换行位置取决于全部文本
+     */
+    private static final class BalancedLineMeasurer implements LineMeasurer {
+        private final MonospaceLineMeasurer mGreedy;
+        private final float mCharWidth;
+        private final int mLineHeight;
+        private final int mVerticalPadding;
+
+        BalancedLineMeasurer(int width, float charWidth, int lineHeight, int verticalPadding) {
+            mGreedy = new MonospaceLineMeasurer(width, charWidth, lineHeight, verticalPadding);
+            mCharWidth = charWidth;
+            mLineHeight = lineHeight;
+            mVerticalPadding = verticalPadding;
+        }
+
+        @Override
+        public int getWidth() {
+            return mGreedy.getWidth();
+        }
+
+        @Override
+        public int getVerticalPadding() {
+            return mVerticalPadding;
+        }
+
+        @Override
+        public float getMinCharWidth() {
+            return mCharWidth;
+        }
+
+        @Override
+        public float getMaxAdvance(char c) {
+            return mGreedy.getMaxAdvance(c);
+        }
+
+        @Override
+        public boolean isGreedy() {
+            return false;
+        }
+
+        @Override
+        public TextLines layout(CharSequence text, int end) {
+            int lineCount = mGreedy.layout(text, end).getLineCount();
+            int low = 1;
+            int high = getWidth();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (new MonospaceLineMeasurer(mid, mCharWidth, mLineHeight, mVerticalPadding)
+                        .layout(text, end).getLineCount() > lineCount) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return new MonospaceLineMeasurer(low, mCharWidth, mLineHeight, mVerticalPadding).layout(text, end);
+        }
+    }
+
+    private static String repeat(String text, int count) {
+        StringBuilder builder = new StringBuilder(text.length() * count);
+        for (int i = 0; i < count; i++) {
+            builder.append(text);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,134 @@
+package com.chong.expandabletextview.core;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MappedTextTest {
+
+    private static final String[] WORDS = {"log", "line", "展开", "折叠", "😀", "👍", "é", "\n"};
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("mapped", ".txt");
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    @Test
+    public void randomAccess_matchesDecodedString() throws IOException {
+        String expected = createText(5000);
+        write(expected.getBytes("UTF-8"));
+        // 小窗口和少量索引条目，覆盖代理对跨窗口和索引间隔加倍
+        MappedText text = MappedText.open(mFile, 7, 4);
+        assertEquals(expected.length(), text.length());
+        Random random = new Random(42);
+        for (int i = 0; i < 2000; i++) {
+            int index = random.nextInt(expected.length());
+            assertEquals("at " + index, expected.charAt(index), text.charAt(index));
+        }
+        for (int i = 0; i < expected.length(); i++) {
+            assertEquals("at " + i, expected.charAt(i), text.charAt(i));
+        }
+        assertEquals(expected, text.toString());
+    }
+
+    @Test
+    public void subSequence_sharesFileAndDecodesRange() throws IOException {
+        String expected = createText(500);
+        write(expected.getBytes("UTF-8"));
+        MappedText text = MappedText.open(mFile);
+        CharSequence sub = text.subSequence(100, 300);
+        assertEquals(expected.substring(100, 300), sub.toString());
+        assertEquals(expected.substring(150, 160), sub.subSequence(50, 60).toString());
+        assertNotEquals(text.getIdentity(), ((MappedText) sub).getIdentity());
+        assertEquals(text.getIdentity(), MappedText.open(mFile).getIdentity());
+    }
+
+    @Test
+    public void collapsedPrefix_decodesOnlyPrefixWindow() throws IOException {
+        String expected = createText(50000);
+        write(expected.getBytes("UTF-8"));
+        MappedText text = MappedText.open(mFile, 64, 16);
+        assertEquals(0, text.getDecodedChars());
+
+        assertEquals(expected.substring(0, 100), text.subSequence(0, 100).toString());
+        assertTrue("decoded " + text.getDecodedChars(), text.getDecodedChars() <= 128);
+    }
+
+    @Test
+    public void openPrefix_scansOnlyPrefixUntilCompleted() throws IOException {
+        String expected = createText(50000);
+        write(expected.getBytes("UTF-8"));
+        MappedText prefix = MappedText.openPrefix(mFile, 100, 64, 16);
+        assertFalse(prefix.isComplete());
+        assertTrue("length " + prefix.length(), prefix.length() >= 100 && prefix.length() <= 101);
+        assertTrue("scanned " + prefix.getScannedChars(), prefix.getScannedChars() <= 101);
+        assertEquals(expected.substring(0, prefix.length()), prefix.toString());
+
+        MappedText full = prefix.complete();
+        assertTrue(full.isComplete());
+        assertSame(full, full.complete());
+        assertEquals(expected.length(), full.length());
+        assertEquals(expected, full.toString());
+        assertNotEquals(prefix.getIdentity(), full.getIdentity());
+        // 扫描的字符数不少于文件长度时直接到达结尾
+        assertTrue(MappedText.openPrefix(mFile, Integer.MAX_VALUE).isComplete());
+    }
+
+    @Test
+    public void index_sizeIndependentOfFileSize() throws IOException {
+        write(createText(100).getBytes("UTF-8"));
+        MappedText small = MappedText.open(mFile, 8, 16);
+        int smallEntries = small.getIndexEntryCount();
+
+        String expected = createText(50000);
+        write(expected.getBytes("UTF-8"));
+        MappedText large = MappedText.open(mFile, 8, 16);
+        assertTrue("small " + smallEntries, smallEntries <= 16);
+        assertTrue("large " + large.getIndexEntryCount(), large.getIndexEntryCount() <= 16);
+        assertEquals(expected.length(), large.length());
+        assertEquals(expected.charAt(expected.length() - 1), large.charAt(expected.length() - 1));
+    }
+
+    @Test
+    public void invalidBytes_decodeAsReplacement() throws IOException {
+        write(new byte[]{'a', (byte) 0xC3, 'b', (byte) 0xFF, (byte) 0xE5, (byte) 0xB1});
+        MappedText text = MappedText.open(mFile);
+        assertEquals("a�b���", text.toString());
+    }
+
+    private void write(byte[] bytes) throws IOException {
+        FileOutputStream out = new FileOutputStream(mFile);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static String createText(int words) {
+        Random random = new Random(7);
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            builder.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return builder.toString();
+    }
+}